@@ -0,0 +1,128 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Calls into the anagram engine. JMH will not generate benchmarks outside a package, and a packaged class cannot name
+ * the engine's classes (they live in the default package), so everything goes through method handles. The handles
+ * are static finals, which the JIT treats as constants, so the calls cost the same as direct ones.
+ */
+final class Engine {
+    // the bundled dictionaries live in the repository root, one level above this module
+    static final String DICT_DIR = System.getProperty("anagrams.dictDir", "..");
+
+    private static final MethodHandle NEW_ANAGRAMMER;
+    private static final MethodHandle SIGNATURE_DICT;
+    private static final MethodHandle GENERATE_FREQUENCY_MAP;
+    private static final MethodHandle FILTER_DICT;
+    private static final MethodHandle SET_STRATEGY;
+    private static final MethodHandle FIND_ANAGRAMS;
+    private static final MethodHandle FIND_TOP_ANAGRAMS;
+    private static final MethodHandle SCORE;
+    private static final MethodHandle NEW_TOP_ANAGRAMS;
+    private static final MethodHandle ACCEPT;
+    private static final MethodHandle NEW_WORD_COUNTER;
+    private static final MethodHandle COUNT_WORDS;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Class<?> anagramMe = Class.forName("AnagramMe");
+            Class<?> frequencyMap = Class.forName("FrequencyMap");
+            Class<?> topAnagrams = Class.forName("TopAnagrams");
+            Class<?> anagramSink = Class.forName("AnagramSink");
+            Class<?> wordCounter = Class.forName("WordCounter");
+            Class<?> strategy = Class.forName("AnagramMe$Strategy");
+
+            NEW_ANAGRAMMER = lookup.unreflectConstructor(accessible(anagramMe.getConstructor(String.class)))
+                    .asType(MethodType.methodType(Object.class, String.class));
+            SIGNATURE_DICT = lookup.unreflectGetter(accessible(anagramMe.getDeclaredField("signatureDict")))
+                    .asType(MethodType.methodType(List.class, Object.class));
+            GENERATE_FREQUENCY_MAP = lookup.unreflect(accessible(anagramMe.getDeclaredMethod("generateFrequencyMap", String.class)))
+                    .asType(MethodType.methodType(Object.class, Object.class, String.class));
+            FILTER_DICT = lookup.unreflect(accessible(anagramMe.getDeclaredMethod("filterDict", List.class, frequencyMap)))
+                    .asType(MethodType.methodType(List.class, Object.class, List.class, Object.class));
+            SET_STRATEGY = MethodHandles.filterArguments(
+                    lookup.unreflect(accessible(anagramMe.getMethod("setStrategy", strategy))),
+                    1,
+                    lookup.unreflect(accessible(strategy.getMethod("valueOf", String.class))))
+                    .asType(MethodType.methodType(void.class, Object.class, String.class));
+            FIND_ANAGRAMS = lookup.unreflect(accessible(anagramMe.getDeclaredMethod("findAnagrams", String.class)))
+                    .asType(MethodType.methodType(List.class, Object.class, String.class));
+            FIND_TOP_ANAGRAMS = lookup.unreflect(accessible(anagramMe.getDeclaredMethod("findTopAnagrams", String.class, int.class)))
+                    .asType(MethodType.methodType(Object.class, Object.class, String.class, int.class));
+            SCORE = lookup.unreflect(accessible(anagramMe.getDeclaredMethod("score", List.class)));
+            NEW_TOP_ANAGRAMS = lookup.unreflectConstructor(accessible(topAnagrams.getConstructor(int.class)))
+                    .asType(MethodType.methodType(Object.class, int.class));
+            ACCEPT = lookup.unreflect(accessible(anagramSink.getMethod("accept", List.class)))
+                    .asType(MethodType.methodType(void.class, Object.class, List.class));
+            NEW_WORD_COUNTER = lookup.unreflectConstructor(accessible(wordCounter.getConstructor()))
+                    .asType(MethodType.methodType(Object.class));
+            COUNT_WORDS = lookup.unreflect(accessible(Class.forName("WordTokenizer").getMethod("countWords", CharSequence.class, wordCounter)))
+                    .asType(MethodType.methodType(void.class, CharSequence.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Engine() {
+    }
+
+    private static <T extends AccessibleObject> T accessible(T member) {
+        member.setAccessible(true);
+        return member;
+    }
+
+    static Object newAnagrammer(String dictName) throws Throwable {
+        return (Object) NEW_ANAGRAMMER.invokeExact(Paths.get(DICT_DIR, dictName).toString());
+    }
+
+    static List<?> signatureDict(Object anagrammer) throws Throwable {
+        return (List<?>) SIGNATURE_DICT.invokeExact(anagrammer);
+    }
+
+    static Object generateFrequencyMap(Object anagrammer, String name) throws Throwable {
+        return (Object) GENERATE_FREQUENCY_MAP.invokeExact(anagrammer, name);
+    }
+
+    static List<?> filterDict(Object anagrammer, List<?> dict, Object frequencyMap) throws Throwable {
+        return (List<?>) FILTER_DICT.invokeExact(anagrammer, (List) dict, frequencyMap);
+    }
+
+    static void setStrategy(Object anagrammer, String strategy) throws Throwable {
+        SET_STRATEGY.invokeExact(anagrammer, strategy);
+    }
+
+    static List<?> findAnagrams(Object anagrammer, String name) throws Throwable {
+        return (List<?>) FIND_ANAGRAMS.invokeExact(anagrammer, name);
+    }
+
+    static Object findTopAnagrams(Object anagrammer, String name, int count) throws Throwable {
+        return (Object) FIND_TOP_ANAGRAMS.invokeExact(anagrammer, name, count);
+    }
+
+    static double score(List<?> anagram) throws Throwable {
+        return (double) SCORE.invokeExact((List) anagram);
+    }
+
+    static Object newTopAnagrams(int capacity) throws Throwable {
+        return (Object) NEW_TOP_ANAGRAMS.invokeExact(capacity);
+    }
+
+    static void accept(Object sink, List<?> anagram) throws Throwable {
+        ACCEPT.invokeExact(sink, (List) anagram);
+    }
+
+    static Object newWordCounter() throws Throwable {
+        return (Object) NEW_WORD_COUNTER.invokeExact();
+    }
+
+    static void countWords(CharSequence text, Object wordCounter) throws Throwable {
+        COUNT_WORDS.invokeExact(text, wordCounter);
+    }
+}
@@ -0,0 +1,48 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One filterDict pass over the whole dictionary, as done at the root of every search
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterDictBenchmark {
+    @Param({"log-words.txt", "words.txt"})
+    public String dict;
+
+    @Param({
+            "Alan Turing",
+            "Ada Lovelace",
+            "Tom Marvolo Riddle",
+            "Elliot Bayes Potter",
+            "Florence Nightingale",
+            "Wolfgang Amadeus Mozart",
+            "Leonardo di ser Piero da Vinci",
+            "Pablo Diego Jose Francisco Picasso",
+    })
+    public String name;
+
+    private Object anagrammer;
+    private List<?> signatureDict;
+    private Object frequencyMap;
+
+    @Setup
+    public void setup() throws Throwable {
+        anagrammer = Engine.newAnagrammer(dict);
+        signatureDict = Engine.signatureDict(anagrammer);
+        frequencyMap = Engine.generateFrequencyMap(anagrammer, name);
+    }
+
+    @Benchmark
+    public List<?> filterDict() throws Throwable {
+        return Engine.filterDict(anagrammer, signatureDict, frequencyMap);
+    }
+}
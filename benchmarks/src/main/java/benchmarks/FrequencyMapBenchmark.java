@@ -0,0 +1,36 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning a name into its letter counts, the first step of every query
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrequencyMapBenchmark {
+    @Param({
+            "Alan Turing",
+            "Tom Marvolo Riddle",
+            "Wolfgang Amadeus Mozart",
+            "Pablo Diego Jose Francisco Picasso",
+    })
+    public String name;
+
+    private Object anagrammer;
+
+    @Setup
+    public void setup() throws Throwable {
+        anagrammer = Engine.newAnagrammer("log-words.txt");
+    }
+
+    @Benchmark
+    public Object generateFrequencyMap() throws Throwable {
+        return Engine.generateFrequencyMap(anagrammer, name);
+    }
+}
@@ -0,0 +1,56 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ranking a finished result set: the full sort main used to do, rescoring on every comparison, against feeding the
+ * same anagrams through the bounded top-K collector
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultSortBenchmark {
+    @Param({"log-words.txt"})
+    public String dict;
+
+    @Param({"Tom Marvolo Riddle", "Elliot Bayes Potter"})
+    public String name;
+
+    private List<List<?>> anagrams;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Throwable {
+        Object anagrammer = Engine.newAnagrammer(dict);
+        anagrams = (List<List<?>>) Engine.findAnagrams(anagrammer, name);
+    }
+
+    @Benchmark
+    public List<List<?>> sortAll() {
+        List<List<?>> sorted = new ArrayList<>(anagrams);
+        sorted.sort((anagram1, anagram2) -> {
+            try {
+                return Double.compare(Engine.score(anagram2), Engine.score(anagram1));
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        return sorted.subList(0, Math.min(2000, sorted.size()));
+    }
+
+    @Benchmark
+    public Object collectTop2000() throws Throwable {
+        Object topAnagrams = Engine.newTopAnagrams(2000);
+        for (List<?> anagram : anagrams) {
+            Engine.accept(topAnagrams, anagram);
+        }
+        return topAnagrams;
+    }
+}
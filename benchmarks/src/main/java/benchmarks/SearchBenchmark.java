@@ -0,0 +1,51 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole searches: every anagram through anagramHelper, and the pruned top 2000 that main prints, with filterDict
+ * scanning the dict or walking the SignatureTrie. The default names have at most 20 letters, since a full search on a
+ * longer one can take minutes per operation; pass longer ones with -p name=... when you want them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class SearchBenchmark {
+    @Param({"log-words.txt", "words.txt"})
+    public String dict;
+
+    @Param({
+            "Alan Turing",
+            "Ada Lovelace",
+            "Tom Marvolo Riddle",
+            "Elliot Bayes Potter",
+            "Florence Nightingale",
+    })
+    public String name;
+
+    @Param({"SCAN", "TRIE"})
+    public String strategy;
+
+    private Object anagrammer;
+
+    @Setup
+    public void setup() throws Throwable {
+        anagrammer = Engine.newAnagrammer(dict);
+        Engine.setStrategy(anagrammer, strategy);
+    }
+
+    @Benchmark
+    public int fullSearch() throws Throwable {
+        return Engine.findAnagrams(anagrammer, name).size();
+    }
+
+    @Benchmark
+    public Object topAnagrams() throws Throwable {
+        return Engine.findTopAnagrams(anagrammer, name, 2000);
+    }
+}
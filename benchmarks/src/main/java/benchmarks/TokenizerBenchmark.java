@@ -0,0 +1,118 @@
+package benchmarks;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counting the words of a corpus of saved pages, the scrapers' old split-and-regex way against WordTokenizer. Parsing
+ * is done up front, so only tokenizing and counting is measured.
+ *
+ * The corpus is a directory of .html files, e.g. one recorded with CrawlStub.recording. Without one, a synthetic
+ * corpus is made up from urban-words.txt: Urban Dictionary style pages with capitals, punctuation and some junk tokens.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+    @Param({"../saved-pages"})
+    public String corpus;
+
+    private List<String> texts;
+
+    @Setup
+    public void setup() throws IOException {
+        List<String> pages = new ArrayList<>();
+        Path directory = Paths.get(corpus);
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.html")) {
+                for (Path file : files) {
+                    pages.add(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        if (pages.isEmpty()) {
+            pages = syntheticPages(500);
+        }
+
+        texts = new ArrayList<>();
+        for (String page : pages) {
+            Document doc = Jsoup.parse(page, "https://www.urbandictionary.com/");
+            for (Element content : doc.select(".meaning, .example, p")) {
+                texts.add(content.text());
+            }
+        }
+    }
+
+    private static List<String> syntheticPages(int count) throws IOException {
+        List<String> words = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(Engine.DICT_DIR, "urban-words.txt"), StandardCharsets.UTF_8)) {
+            words.add(line.substring(0, line.lastIndexOf(':')));
+        }
+        String[] junk = {"don't", "2021", "@someone", "e-mail", "http://t.co/x", ":)"};
+        String[] punctuation = {"", "", "", ".", ",", "!", "?", "\"", ")"};
+
+        Random random = new Random(42);
+        List<String> pages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder page = new StringBuilder("<html><body>");
+            for (String className : new String[]{"meaning", "example"}) {
+                page.append("<div class=\"").append(className).append("\">");
+                for (int j = 0; j < 150; j++) {
+                    // skewed toward the common words, like real text
+                    String word = random.nextInt(20) == 0
+                            ? junk[random.nextInt(junk.length)]
+                            : words.get((int) (words.size() * Math.pow(random.nextDouble(), 3)));
+                    if (random.nextInt(10) == 0) {
+                        word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+                    }
+                    page.append(word).append(punctuation[random.nextInt(punctuation.length)]).append(' ');
+                }
+                page.append("</div>");
+            }
+            pages.add(page.append("</body></html>").toString());
+        }
+        return pages;
+    }
+
+    @Benchmark
+    public Map<String, Integer> splitAndRegex() {
+        Map<String, Integer> frequencyMap = new HashMap<>();
+        for (String text : texts) {
+            for (String word : text.split(" ")) {
+                word = word.toLowerCase().replaceAll("[.,\"!?\n()*]", "");
+                if (!word.matches("[a-z]+")) {
+                    continue;
+                }
+                frequencyMap.merge(word, 1, Integer::sum);
+            }
+        }
+        return frequencyMap;
+    }
+
+    @Benchmark
+    public Object wordTokenizer() throws Throwable {
+        Object wordCounter = Engine.newWordCounter();
+        for (String text : texts) {
+            Engine.countWords(text, wordCounter);
+        }
+        return wordCounter;
+    }
+}
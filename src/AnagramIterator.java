@@ -0,0 +1,99 @@
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Hands anagrams from a search running on a background thread to a caller pulling them one at a time. The queue
+ * between the two is bounded, so the search waits whenever the caller falls behind.
+ */
+public class AnagramIterator implements Iterator<List<FrequencyContainer>>, AutoCloseable {
+    // marks the end of the search in the queue
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> queue;
+    private final Thread searchThread;
+    private volatile boolean cancelled = false;
+    private volatile RuntimeException failure;
+    private Object next;
+
+    public AnagramIterator(AnagramMe anagrammer, String name, int bufferSize) {
+        this.queue = new ArrayBlockingQueue<>(bufferSize);
+        this.searchThread = new Thread(() -> {
+            try {
+                anagrammer.findAnagrams(name, new AnagramSink() {
+                    @Override
+                    public void accept(List<FrequencyContainer> anagram) {
+                        try {
+                            queue.put(anagram);
+                        } catch (InterruptedException e) {
+                            cancelled = true;
+                        }
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return cancelled;
+                    }
+                });
+            } catch (RuntimeException e) {
+                failure = e;
+            } finally {
+                // the caller may have stopped reading, in which case nobody is waiting for the end marker
+                if (!cancelled) {
+                    try {
+                        queue.put(END);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            }
+        }, "anagram-search");
+        searchThread.setDaemon(true);
+        searchThread.start();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            if (cancelled) {
+                return false;
+            }
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                return false;
+            }
+        }
+        if (next == END) {
+            if (failure != null) {
+                throw failure;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<FrequencyContainer> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<FrequencyContainer> anagram = (List<FrequencyContainer>) next;
+        next = null;
+        return anagram;
+    }
+
+    /**
+     * Stops the search; anagrams already found but not yet read are dropped
+     */
+    @Override
+    public void close() {
+        cancelled = true;
+        searchThread.interrupt();
+        queue.clear();
+    }
+}
@@ -1,33 +1,135 @@
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Paths;
+import javax.management.JMException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class AnagramMe {
+    /**
+     * How filterDict finds the words that fit the remaining letters; both find the same words
+     */
+    public enum Strategy {
+        // scan the words left, one by one
+        SCAN,
+        // walk a SignatureTrie, following only letters the pool still has; short dicts are still scanned
+        TRIE
+    }
+
     String dictPath;
     List<FrequencyContainer> dict = new ArrayList<>();
-    private int wordLengthThreshold = 3;
+    // the best word of each letter signature; the search runs over these and expands the rest when it emits
+    List<FrequencyContainer> signatureDict;
+    // where dict and signatureDict are read from, if they were loaded from a binary dictionary
+    private BinaryDictionary binaryDictionary;
+    static final int WORD_LENGTH_THRESHOLD = 3;
+    private int wordLengthThreshold = WORD_LENGTH_THRESHOLD;
+    // the shortest word in the dict, which caps how many more words the remaining letters can make
+    int minWordLength = Integer.MAX_VALUE;
+    // a hash of every word and score, so cached results go stale when the dict's contents change under the same path
+    private long dictFingerprint = 0;
     private static int penaltySize = 2;
+    // ranks the anagrams; the search updates it word by word and prunes with its upper bound
+    private Scorer scorer = defaultScorer();
+    private Strategy strategy = Strategy.SCAN;
+    // built the first time the TRIE strategy is chosen
+    private SignatureTrie signatureTrie;
+    // below this many words, scanning them beats walking the trie
+    private static final int MIN_TRIE_DICT_SIZE = 512;
+    // finds the one signature that uses up a pool exactly; built the first time a search limits its word count
+    private volatile Map<FrequencyMap, FrequencyContainer> signatureIndex;
+    // the signatures with at least k + 1 of each letter, by slot and then k; built the first time a session grows
+    private volatile List<List<List<FrequencyContainer>>> signaturesByLetterCount;
+    // optional; shares filterDict passes between subproblems that leave the same letters at the same frontier
+    private SubproblemCache subproblemCache;
+    private static final int MIN_CACHED_DICT_SIZE = 256;
+    // optional; remembers ranked results across queries with the same letters
+    private ResultCache resultCache;
+    // totals over every query, also published through JMX by registerMetrics
+    final AnagramMetrics metrics = new AnagramMetrics(this);
 
     public AnagramMe(String dictPath) {
         this.dictPath = dictPath;
+        long start = System.nanoTime();
         try {
             loadDict();
         } catch (IOException e) {
             e.printStackTrace();
         }
+        metrics.loadNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Searches a dictionary that was built in memory, e.g. one weight profile of a MergedDictionary
+     *
+     * @param dictName                 names the dictionary in result cache keys; there is no file to load
+     * @param sortedDict               the words, largest score first; they get their ids and groups from this
+     *                                 AnagramMe, so they must not be shared with another
+     */
+    public AnagramMe(String dictName, List<FrequencyContainer> sortedDict) {
+        this.dictPath = dictName;
+        long start = System.nanoTime();
+        dict = sortedDict;
+        signatureDict = FrequencyContainer.groupBySignature(dict);
+        assignIds();
+        metrics.loadNanos = System.nanoTime() - start;
     }
 
     /**
-     * Loads the dictionary into an ArrayList
+     * Loads the dictionary into an ArrayList, either from a word:score text file or from a precompiled binary one
      * @throws IOException
      */
     private void loadDict() throws IOException {
-        BufferedReader reader = new BufferedReader(new FileReader(dictPath));
+        if (dictPath.endsWith(BinaryDictionary.EXTENSION)) {
+            // the binary dictionary is already sorted, grouped and numbered, and its words are only read once needed
+            binaryDictionary = BinaryDictionary.open(dictPath);
+            dict = binaryDictionary.words();
+            signatureDict = binaryDictionary.signatures();
+            minWordLength = binaryDictionary.minWordLength();
+            dictFingerprint = binaryDictionary.fingerprint();
+        }
+        else {
+            dict = readTextDict(dictPath, wordLengthThreshold, 10000);
+            sortByScore(dict);
+            signatureDict = FrequencyContainer.groupBySignature(dict);
+            assignIds();
+        }
+
+        System.out.println("Finished loading the dict");
+    }
+
+    private void assignIds() {
+        long fingerprint = 1125899906842597L;
+        for (int i = 0; i < dict.size(); i++) {
+            FrequencyContainer container = dict.get(i);
+            container.id = i;
+            minWordLength = Math.min(minWordLength, container.length);
+            fingerprint = 31 * fingerprint + container.word.hashCode();
+            fingerprint = 31 * fingerprint + container.frequency;
+        }
+        dictFingerprint = fingerprint;
+    }
+
+    /**
+     * Reads a text dictionary of word:score lines; lines without a score get a score of 1
+     *
+     * @param path                     the path of the text dictionary
+     * @param wordLengthThreshold      the shortest word to keep
+     * @param maxLines                 the number of lines to read at most
+     * @return                         the words, in file order
+     * @throws IOException
+     */
+    static List<FrequencyContainer> readTextDict(String path, int wordLengthThreshold, int maxLines) throws IOException {
+        List<FrequencyContainer> dict = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new FileReader(path));
         String nextLine;
 
         int numberCollected = 0;
-        while ((nextLine = reader.readLine()) != null && numberCollected < 10000) {
+        while ((nextLine = reader.readLine()) != null && numberCollected < maxLines) {
             numberCollected++;
             String[] splitLine = nextLine.split(":");
             if (splitLine.length > 1 && splitLine[0].length() >= wordLengthThreshold) {
@@ -38,12 +140,22 @@ public class AnagramMe {
                         )
                 );
             }
-            else if (nextLine.length() >= wordLengthThreshold) {
+            // lines without a score (e.g. words.txt) get a default score
+            else if (splitLine.length == 1 && nextLine.length() >= wordLengthThreshold) {
                 dict.add(new FrequencyContainer(1, nextLine));
             }
         }
 
-        // sorts with largest score first
+        reader.close();
+        return dict;
+    }
+
+    /**
+     * Sorts a dictionary with largest score first, keeping the file order of equal scores
+     *
+     * @param dict                     the dictionary to sort
+     */
+    static void sortByScore(List<FrequencyContainer> dict) {
         dict.sort((s1, s2) -> {
             if (s1.frequency == s2.frequency) {
                 return 0;
@@ -52,9 +164,6 @@ public class AnagramMe {
                 return (s1.frequency >= s2.frequency) ? -1 : 1;
             }
         });
-
-        reader.close();
-        System.out.println("Finished loading the dict");
     }
 
     /**
@@ -63,11 +172,11 @@ public class AnagramMe {
      * @param name             the name to convert to Map representation
      * @return                 the map representation of the name
      */
-    private FrequencyMap generateFrequencyMap(String name) {
+    FrequencyMap generateFrequencyMap(String name) {
         FrequencyMap frequencyMap = new FrequencyMap();
 
         // iterates over characters
-        for (Character character : name.toLowerCase().toCharArray()) {
+        for (char character : name.toLowerCase().toCharArray()) {
             // trims out whitespace
             if (character != ' ') {
                 frequencyMap.increment(character);
@@ -83,36 +192,185 @@ public class AnagramMe {
      * @param dict                          the original dict to filter
      * @param frequencyMap                  the frequency map of characters in the search string
      */
-    private List<FrequencyContainer> filterDict(List<FrequencyContainer> dict, FrequencyMap frequencyMap) {
+    List<FrequencyContainer> filterDict(List<FrequencyContainer> dict, FrequencyMap frequencyMap) {
+        if (dict == signatureDict && binaryDictionary != null) {
+            return binaryDictionary.fittingSignatures(0, frequencyMap);
+        }
         List<FrequencyContainer> filteredDict = new ArrayList<>();
-        // we will edit only cloned, rather than original, words
-        FrequencyMap clonedFreqs;
+        int poolSize = frequencyMap.size();
+        int poolMask = frequencyMap.mask();
 
         for (FrequencyContainer container : dict) {
-            clonedFreqs = frequencyMap.copy();
-
-            if (container.word.length() <= clonedFreqs.size()) {
-                boolean didFail = false;
-                for (Character character : container.word.toCharArray()) {
-                    if (clonedFreqs.contains(character)) {
-                        clonedFreqs.decrement(character);
-                    }
-                    else {
-                        // breaks the inner loop and continues to the next word
-                        didFail = true;
-                        break;
-                    }
-                }
-                if (!didFail) {
-                    // if we get here, we can add to the new dict
-                    filteredDict.add(container);
-                }
+            // most words are rejected here, by length or by using a letter the pool has none of
+            if (container.length > poolSize || (container.letterMask & ~poolMask) != 0) {
+                continue;
+            }
+            // the word fits if the pool holds at least as many of each of its letters
+            if (frequencyMap.contains(container.letters)) {
+                filteredDict.add(container);
             }
         }
 
         return filteredDict;
     }
 
+    /**
+     * Filters the part of a dictionary from minimumIndex onwards, going through the subproblem cache if there is one
+     *
+     * @param dict                          the dict to filter, the signature dict or one filtered from it
+     * @param minimumIndex                  the first index of the dict we may use
+     * @param frequencyMap                  the frequency map of the remaining characters
+     * @param stats                         the stats of the query, which count the words actually scanned
+     */
+    List<FrequencyContainer> filterDict(
+            List<FrequencyContainer> dict,
+            int minimumIndex,
+            FrequencyMap frequencyMap,
+            SearchStats stats
+    ) {
+        List<FrequencyContainer> remainingDict = dict.subList(minimumIndex, dict.size());
+        Supplier<List<FrequencyContainer>> filter = () -> {
+            // every dict we filter holds every signature that fits, from its first word on, so the trie can stand in
+            if (strategy == Strategy.TRIE && remainingDict.size() >= MIN_TRIE_DICT_SIZE) {
+                return signatureTrie.fitting(frequencyMap, remainingDict.get(0).id, stats);
+            }
+            // a binary dictionary checks its records in place, so the words that do not fit are never built
+            List<FrequencyContainer> filteredDict = dict == signatureDict && binaryDictionary != null
+                    ? binaryDictionary.fittingSignatures(minimumIndex, frequencyMap)
+                    : filterDict(remainingDict, frequencyMap);
+            stats.filtered(remainingDict.size(), filteredDict.size());
+            return filteredDict;
+        };
+        // filtering a short dict is cheaper than hashing the subproblem
+        if (subproblemCache == null || remainingDict.size() < MIN_CACHED_DICT_SIZE) {
+            return filter.get();
+        }
+        // every dict we filter keeps the sorted order, so the first word's id marks where the subproblem starts
+        return subproblemCache.get(frequencyMap, remainingDict.get(0).id, filter);
+    }
+
+    /**
+     * Turns on memoization of filtered dictionaries across subproblems
+     *
+     * @param maxWords                      the number of words the cache may hold across all its entries
+     */
+    public void enableSubproblemCache(long maxWords) {
+        subproblemCache = new SubproblemCache(maxWords);
+    }
+
+    /**
+     * @return                              the subproblem cache with its hit/miss counters, or null if it is off
+     */
+    public SubproblemCache getSubproblemCache() {
+        return subproblemCache;
+    }
+
+    /**
+     * Changes how anagrams are ranked. Cached results are keyed by the scorer's name, so they are not mixed up.
+     *
+     * @param scorer                        the scorer to use, with no words pushed
+     */
+    public void setScorer(Scorer scorer) {
+        this.scorer = scorer;
+    }
+
+    public Scorer getScorer() {
+        return scorer;
+    }
+
+    /**
+     * @return                              the original scorer: frequency sum over word count to the penaltySize
+     */
+    static Scorer defaultScorer() {
+        return new PenaltyScorer(penaltySize);
+    }
+
+    /**
+     * Changes how the search finds the words that fit; both strategies find the same anagrams. Switching to TRIE
+     * compiles the signature dict into a trie the first time.
+     *
+     * @param strategy                      the strategy to use
+     */
+    public void setStrategy(Strategy strategy) {
+        if (strategy == Strategy.TRIE && signatureTrie == null) {
+            signatureTrie = new SignatureTrie(signatureDict, dict);
+        }
+        this.strategy = strategy;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Turns on caching of ranked results across queries
+     *
+     * @param maxEntries                    the number of results to keep in memory
+     * @param spillDirectory                where to persist results across restarts, or null for memory only
+     * @throws IOException                  if the spill directory cannot be created
+     */
+    public void enableResultCache(int maxEntries, String spillDirectory) throws IOException {
+        resultCache = new ResultCache(maxEntries, spillDirectory);
+    }
+
+    /**
+     * @return                              the result cache with its hit counters, or null if it is off
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Describes everything a ranked result depends on, for the result cache: the dictionary (its path and a
+     * fingerprint of its words and scores, so a rebuilt dictionary at the same path misses), the scoring and the
+     * letters of the name, in sorted order so that any rearrangement of a name gives the same key
+     *
+     * @param name                          the name being anagrammed
+     * @return                              the cache key of the name
+     */
+    String resultKey(String name) {
+        StringBuilder letters = new StringBuilder();
+        for (char character : name.toLowerCase().toCharArray()) {
+            // the same characters generateFrequencyMap drops
+            if (character != ' ') {
+                letters.append(character);
+            }
+        }
+        return dictPath + "|" + dict.size() + "|" + Long.toHexString(dictFingerprint) + "|" + scorer.name() + "|" + FrequencyContainer.signature(letters.toString());
+    }
+
+    /**
+     * Publishes this AnagramMe's metrics through JMX
+     *
+     * @param name                          distinguishes this AnagramMe from others in the same JVM
+     * @throws JMException                  if the name is taken
+     */
+    public void registerMetrics(String name) throws JMException {
+        metrics.register(name);
+    }
+
+    public AnagramMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Runs a sequential search from the root and records its stats
+     *
+     * @param dict                          the signature dict, or a filtered part of it that covers the name
+     * @param name                          the name to anagram
+     * @param sink                          the sink receiving anagrams over real words
+     * @param stats                         the stats to fill in
+     */
+    private void search(List<FrequencyContainer> dict, String name, AnagramSink sink, SearchStats stats) {
+        long start = System.nanoTime();
+        FrequencyMap frequencyMap = generateFrequencyMap(name);
+
+        anagramHelper(dict, frequencyMap, new WordPath(scorer.empty()), new SignatureExpander(sink, scorer), 0, stats);
+
+        stats.searchNanos = System.nanoTime() - start;
+        metrics.record(stats);
+    }
+
     /**
      * Gets a list of the anagrams of a name
      *
@@ -121,61 +379,414 @@ public class AnagramMe {
      */
     private List<List<FrequencyContainer>> findAnagrams(String name) {
         List<List<FrequencyContainer>> anagrams = new ArrayList<>();
-        FrequencyMap frequencyMap = generateFrequencyMap(name);
+        SearchStats stats = new SearchStats();
 
-        anagramHelper(dict, frequencyMap, new ArrayList<>(), anagrams, 0);
+        search(signatureDict, name, anagram -> {
+            stats.anagrams++;
+            anagrams.add(anagram);
+        }, stats);
 
         return anagrams;
     }
 
+    /**
+     * Runs the search on the calling thread, handing each anagram to the sink as soon as it is found. The sink can stop
+     * the search at any point through isCancelled().
+     *
+     * @param name             the name to anagram
+     * @param sink             the sink receiving the anagrams, in the order they are found
+     */
+    public void findAnagrams(String name, AnagramSink sink) {
+        SearchStats stats = new SearchStats();
+        search(signatureDict, name, counting(sink, stats), stats);
+    }
+
+    /**
+     * Wraps a sink so every anagram it receives is counted in the stats, as the top-K collectors count theirs
+     *
+     * @param sink             the sink receiving the anagrams
+     * @param stats            the stats of the search
+     * @return                 the wrapped sink
+     */
+    private static AnagramSink counting(AnagramSink sink, SearchStats stats) {
+        return new AnagramSink() {
+            @Override
+            public void accept(List<FrequencyContainer> anagram) {
+                stats.anagrams++;
+                sink.accept(anagram);
+            }
+
+            @Override
+            public void acceptIds(int[] wordIds, int length, List<FrequencyContainer> dict, double score) {
+                stats.anagrams++;
+                sink.acceptIds(wordIds, length, dict, score);
+            }
+
+            @Override
+            public double threshold() {
+                return sink.threshold();
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return sink.isCancelled();
+            }
+        };
+    }
+
+    /**
+     * Lazily iterates over the anagrams of a name. The search runs on a background thread that blocks once bufferSize
+     * anagrams are waiting, and it stops when the iterator is closed.
+     *
+     * @param name             the name to anagram
+     * @param bufferSize       the number of anagrams the search may run ahead of the caller
+     * @return                 an iterator over the anagrams, in the order they are found
+     */
+    public AnagramIterator iterateAnagrams(String name, int bufferSize) {
+        return new AnagramIterator(this, name, bufferSize);
+    }
+
+    /**
+     * Lazily streams the anagrams of a name. Close the stream (e.g. with try-with-resources) to stop the search once
+     * you have seen enough, for instance after limit(n).
+     *
+     * @param name             the name to anagram
+     * @return                 a stream of the anagrams, in the order they are found
+     */
+    public Stream<List<FrequencyContainer>> streamAnagrams(String name) {
+        AnagramIterator iterator = iterateAnagrams(name, 256);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
+    /**
+     * Gets the best anagrams of a name without keeping the rest in memory
+     *
+     * @param name             the name to anagram
+     * @param count            the number of anagrams to keep
+     * @return                 the collector holding the best anagrams
+     */
+    public TopAnagrams findTopAnagrams(String name, int count) {
+        return findTopAnagrams(name, count, signatureDict);
+    }
+
+    /**
+     * Gets the best anagrams of a name, best first, answering from the result cache when it can
+     *
+     * @param name             the name to anagram
+     * @param count            the number of anagrams to return
+     * @return                 the best anagrams, best first
+     */
+    public List<ScoredAnagram> findBestAnagrams(String name, int count) {
+        return findBestAnagrams(name, count, signatureDict);
+    }
+
+    /**
+     * Gets the best anagrams of a name, best first, answering from the result cache when it can and otherwise
+     * searching a dict that was already narrowed down by filterForBatch
+     *
+     * @param name             the name to anagram
+     * @param count            the number of anagrams to return
+     * @param batchDict        the signature dict, or a filtered part of it that covers the name's letters
+     * @return                 the best anagrams, best first
+     */
+    public List<ScoredAnagram> findBestAnagrams(String name, int count, List<FrequencyContainer> batchDict) {
+        List<ScoredAnagram> anagrams = resultCache == null ? null : resultCache.get(resultKey(name), count);
+        return anagrams != null ? anagrams : searchBestAnagrams(name, count, batchDict);
+    }
+
+    /**
+     * Searches for the best anagrams of a name without looking in the result cache, but stores what it finds there
+     *
+     * @param name             the name to anagram
+     * @param count            the number of anagrams to return
+     * @param batchDict        the signature dict, or a filtered part of it that covers the name's letters
+     * @return                 the best anagrams, best first
+     */
+    List<ScoredAnagram> searchBestAnagrams(String name, int count, List<FrequencyContainer> batchDict) {
+        List<ScoredAnagram> anagrams = findTopAnagrams(name, count, batchDict).toSortedList();
+        if (resultCache != null) {
+            resultCache.put(resultKey(name), count, anagrams);
+        }
+        return anagrams;
+    }
+
+    /**
+     * Gets the best anagrams of a name, searching a dict that was already narrowed down by filterForBatch
+     *
+     * @param name             the name to anagram
+     * @param count            the number of anagrams to keep
+     * @param batchDict        the signature dict, or a filtered part of it that covers the name's letters
+     * @return                 the collector holding the best anagrams
+     */
+    public TopAnagrams findTopAnagrams(String name, int count, List<FrequencyContainer> batchDict) {
+        TopAnagrams topAnagrams = new TopAnagrams(count, scorer);
+        topAnagrams.metrics = metrics;
+
+        search(batchDict, name, topAnagrams, topAnagrams.getStats());
+
+        return topAnagrams;
+    }
+
+    /**
+     * Gets the best anagrams of a name that can be found within a budget. Anagrams of one word are searched first,
+     * then of two words, and so on. The short anagrams the size penalty favours are in early, and every pass prunes
+     * against the best anagrams of the passes before it.
+     *
+     * @param name             the name to anagram
+     * @param count            the number of anagrams to keep
+     * @param budget           how long the search may run
+     * @return                 the collector holding the best anagrams found; isComplete() tells whether the search
+     *                         finished
+     */
+    public TopAnagrams findTopAnagrams(String name, int count, SearchBudget budget) {
+        return findTopAnagrams(name, count, signatureDict, budget);
+    }
+
+    /**
+     * Gets the best anagrams of a name that can be found within a budget, searching a dict that was already narrowed
+     * down by filterForBatch
+     *
+     * @param name             the name to anagram
+     * @param count            the number of anagrams to keep
+     * @param batchDict        the signature dict, or a filtered part of it that covers the name's letters
+     * @param budget           how long the search may run
+     * @return                 the collector holding the best anagrams found; isComplete() tells whether the search
+     *                         finished
+     */
+    public TopAnagrams findTopAnagrams(String name, int count, List<FrequencyContainer> batchDict, SearchBudget budget) {
+        return findTopAnagrams(generateFrequencyMap(name), count, batchDict, budget);
+    }
+
+    /**
+     * Gets the best anagrams of some letters, searching a dict that already covers them; see
+     * findTopAnagrams(String, int, SearchBudget)
+     *
+     * @param frequencyMap     the letters to anagram (restored before returning)
+     * @param count            the number of anagrams to keep
+     * @param dict             the signature dict, or a filtered part of it that covers the letters
+     * @param budget           how long the search may run, or null to search everything in one pass
+     * @return                 the collector holding the best anagrams found
+     */
+    TopAnagrams findTopAnagrams(FrequencyMap frequencyMap, int count, List<FrequencyContainer> dict, SearchBudget budget) {
+        long start = System.nanoTime();
+        TopAnagrams topAnagrams = new TopAnagrams(count, scorer);
+        topAnagrams.metrics = metrics;
+        SearchStats stats = topAnagrams.getStats();
+        if (budget == null) {
+            anagramHelper(dict, frequencyMap, new WordPath(scorer.empty()), new SignatureExpander(topAnagrams, scorer), 0, stats);
+            stats.searchNanos = System.nanoTime() - start;
+            metrics.record(stats);
+            return topAnagrams;
+        }
+        AnagramSink sink = new SignatureExpander(budget.limit(topAnagrams, stats), scorer);
+
+        // no anagram has more words than this
+        int maxWords = minWordLength == Integer.MAX_VALUE ? 0 : frequencyMap.size() / minWordLength;
+        for (int words = 1; words <= maxWords; words++) {
+            anagramHelper(dict, frequencyMap, new WordPath(scorer.empty(), words, words), sink, 0, stats);
+            if (budget.exhausted()) {
+                topAnagrams.markIncomplete(words - 1);
+                break;
+            }
+        }
+
+        stats.searchNanos = System.nanoTime() - start;
+        metrics.record(stats);
+        return topAnagrams;
+    }
+
+    /**
+     * Filters the signature dict once for a whole batch of names, against the union of their letters. Every word that
+     * fits any one of the names survives, so each name's search can start from the result instead of the full dict.
+     *
+     * @param names            the names in the batch
+     * @return                 the signature words that fit at least the union of the names
+     */
+    public List<FrequencyContainer> filterForBatch(Collection<String> names) {
+        FrequencyMap union = new FrequencyMap();
+        for (String name : names) {
+            union.union(generateFrequencyMap(name));
+        }
+        if (strategy == Strategy.TRIE) {
+            return signatureTrie.fitting(union, 0, new SearchStats());
+        }
+        return filterDict(signatureDict, union);
+    }
+
+    /**
+     * Gets the best anagrams of a name, searching independent branches in parallel
+     *
+     * @param name             the name to anagram
+     * @param count            the number of anagrams to keep
+     * @param pool             the pool to run the search on
+     * @return                 the collector holding the best anagrams
+     */
+    public TopAnagrams findTopAnagrams(String name, int count, ForkJoinPool pool) {
+        long start = System.nanoTime();
+        FrequencyMap frequencyMap = generateFrequencyMap(name);
+
+        TopAnagrams topAnagrams = pool.invoke(new ParallelAnagramSearch(this, signatureDict, frequencyMap, count));
+
+        topAnagrams.metrics = metrics;
+        topAnagrams.getStats().searchNanos = System.nanoTime() - start;
+        metrics.record(topAnagrams.getStats());
+        return topAnagrams;
+    }
+
     /**
      * A helper function to recursively generate anagrams
      *
      * @param dict                     the currently available dictionary (from one layer up)
-     * @param frequencyMap             the available characters
-     * @param usedWords                the words we've already used
-     * @param anagrams                 the List of anagrams we're adding to
+     * @param frequencyMap             the available characters (restored before returning)
+     * @param path                     the words we've already used (restored before returning)
+     * @param anagrams                 the sink we're submitting anagrams to
+     * @param stats                    the stats of the query
      */
     public void anagramHelper(
             List<FrequencyContainer> dict,
             FrequencyMap frequencyMap,
-            List<FrequencyContainer> usedWords,
-            List<List<FrequencyContainer>> anagrams,
-            int minimumIndex
+            WordPath path,
+            AnagramSink anagrams,
+            int minimumIndex,
+            SearchStats stats
     ) {
+        stats.nodesVisited++;
+        stats.maxDepth = Math.max(stats.maxDepth, path.length());
+
+        if (path.atLastWord()) {
+            finishWithOneWord(dict, frequencyMap, path, anagrams, minimumIndex, stats);
+            return;
+        }
+
         // we filter the dictionary based on the current frequencyMap
         // we only pay attention to a subsection
-        List<FrequencyContainer> filteredDict = filterDict(dict.subList(minimumIndex, dict.size()), frequencyMap);
+        List<FrequencyContainer> filteredDict = filterDict(dict, minimumIndex, frequencyMap, stats);
 
         // we keep track of the index to keep from evaluating duplicates
         int index = 0;
         for (FrequencyContainer container : filteredDict) {
+            if (anagrams.isCancelled()) {
+                return;
+            }
+
             // abort if the word is longer than the freq map
-            if (container.word.length() > frequencyMap.size()) {
+            if (container.length > frequencyMap.size()) {
                 continue;
             }
 
-            List<FrequencyContainer> newUsedWords = new ArrayList<>(usedWords);
-            newUsedWords.add(container);
-
-            // if lengths match, we can submit an anagram
-            if (container.word.length() == frequencyMap.size()) {
-                anagrams.add(newUsedWords);
+            // the dict is sorted best first, so once this word's branch cannot beat the threshold, no later word's
+            // branch can either
+            if (path.scorer().upperBound(frequencyMap.size(), minWordLength, container.frequency) <= anagrams.threshold()) {
+                break;
             }
 
-            // otherwise, we recurse
-            else {
-                FrequencyMap newFrequencyMap = frequencyMap.copy();
-                for (Character character : container.word.toCharArray()) {
-                    newFrequencyMap.decrement(character);
+            path.push(container);
+
+            // if lengths match, we can submit an anagram; ids always index the full dict, not the filtered one
+            if (container.length == frequencyMap.size()) {
+                if (path.canEnd()) {
+                    stats.solutions++;
+                    anagrams.acceptIds(path.ids(), path.length(), this.dict, path.scorer().score());
                 }
-                anagramHelper(filteredDict, newFrequencyMap, newUsedWords, anagrams, index);
             }
 
+            // otherwise, we take the word's letters out of the pool, recurse, and put them back
+            else if (path.canExtend()) {
+                frequencyMap.subtract(container.letters);
+                anagramHelper(filteredDict, frequencyMap, path, anagrams, index, stats);
+                frequencyMap.add(container.letters);
+            }
+
+            path.pop(container);
             index++;
         }
     }
 
+    /**
+     * Ends a path whose next word has to be its last. That word has to use up every letter left, so instead of
+     * filtering the dict we look up the one signature with exactly those letters.
+     */
+    private void finishWithOneWord(
+            List<FrequencyContainer> dict,
+            FrequencyMap frequencyMap,
+            WordPath path,
+            AnagramSink anagrams,
+            int minimumIndex,
+            SearchStats stats
+    ) {
+        FrequencyContainer container = signatureIndex().get(frequencyMap);
+        // every dict we search holds every signature that fits from its first word on, so comparing ids is enough
+        if (container == null || minimumIndex >= dict.size() || container.id < dict.get(minimumIndex).id
+                || anagrams.isCancelled()
+                || path.scorer().upperBound(frequencyMap.size(), minWordLength, container.frequency) <= anagrams.threshold()) {
+            return;
+        }
+
+        path.push(container);
+        if (path.canEnd()) {
+            stats.solutions++;
+            anagrams.acceptIds(path.ids(), path.length(), this.dict, path.scorer().score());
+        }
+        path.pop(container);
+    }
+
+    private Map<FrequencyMap, FrequencyContainer> signatureIndex() {
+        Map<FrequencyMap, FrequencyContainer> index = signatureIndex;
+        if (index == null) {
+            synchronized (this) {
+                if (signatureIndex == null) {
+                    index = new HashMap<>();
+                    for (FrequencyContainer container : signatureDict) {
+                        index.put(container.letters, container);
+                    }
+                    signatureIndex = index;
+                }
+                index = signatureIndex;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @param slot                     a letter's slot (see FrequencyMap.indexOf)
+     * @param count                    the least number of that letter
+     * @return                         the signatures with at least that many of the letter, best first
+     */
+    List<FrequencyContainer> signaturesWithAtLeast(int slot, int count) {
+        List<List<FrequencyContainer>> byCount = signaturesByLetterCount().get(slot);
+        return count <= 0 ? signatureDict : count > byCount.size() ? Collections.emptyList() : byCount.get(count - 1);
+    }
+
+    private List<List<List<FrequencyContainer>>> signaturesByLetterCount() {
+        List<List<List<FrequencyContainer>>> index = signaturesByLetterCount;
+        if (index == null) {
+            synchronized (this) {
+                if (signaturesByLetterCount == null) {
+                    index = new ArrayList<>(FrequencyMap.ALPHABET_SIZE);
+                    for (int slot = 0; slot < FrequencyMap.ALPHABET_SIZE; slot++) {
+                        index.add(new ArrayList<>());
+                    }
+                    // the signature dict is best first, so every list comes out best first too
+                    for (FrequencyContainer container : signatureDict) {
+                        for (int slot = 0; slot < FrequencyMap.ALPHABET_SIZE; slot++) {
+                            List<List<FrequencyContainer>> byCount = index.get(slot);
+                            for (int count = 1; count <= container.letters.countAt(slot); count++) {
+                                if (byCount.size() < count) {
+                                    byCount.add(new ArrayList<>());
+                                }
+                                byCount.get(count - 1).add(container);
+                            }
+                        }
+                    }
+                    signaturesByLetterCount = index;
+                }
+                index = signaturesByLetterCount;
+            }
+        }
+        return index;
+    }
+
     /**
      * Applies a penalty based on the number of words in the anagram
      * Note: 1* is the amount to get the average score over words.
@@ -184,35 +795,69 @@ public class AnagramMe {
      * @return
      */
     public static int applySizePenalty(List<FrequencyContainer> anagrams) {
+        return penalty(anagrams.size());
+    }
+
+    static int penalty(int wordCount) {
         int penaltySize1 = AnagramMe.penaltySize;
         int penalty = 1;
         while (penaltySize1 > 0) {
-            penalty *= anagrams.size();
+            penalty *= wordCount;
             penaltySize1--;
         }
         return penalty;
     }
 
+    /**
+     * Scores an anagram with the default scorer; higher is better
+     *
+     * @param anagram          the words of the anagram
+     * @return                 the frequency sum with the size penalty applied
+     */
+    public static double score(List<FrequencyContainer> anagram) {
+        return defaultScorer().scoreOf(anagram);
+    }
+
+    /**
+     * With no arguments, prints the best 2000 anagrams. Otherwise the arguments are a format (ndjson or csv), an
+     * output file (or - for stdout), optionally a count (a count of "all" streams every anagram as it is found) and
+     * optionally a scorer (see Scorer.named).
+     */
     public static void main(String[] args) {
         AnagramMe anagrammer = new AnagramMe("./log-words.txt");
-        List<List<FrequencyContainer>> anagrams = anagrammer.findAnagrams("Elliot Bayes Potter");
-        System.out.println("Sorting the anagrams...");
-        // sort in descending order based on score.
-        anagrams.sort((anagram1, anagram2) -> {
-            int score1 = FrequencyContainer.getFrequencySum(anagram1) / applySizePenalty(anagram1);
-            int score2 = FrequencyContainer.getFrequencySum(anagram2) / applySizePenalty(anagram2);
-
-            if (score1 == score2) {
-                return 0;
-            } else if (score1 > score2) {
-                return -1;
-            } else {
-                return 1;
+        if (args.length > 0) {
+            writeAnagrams(anagrammer, "Elliot Bayes Potter", args);
+            return;
+        }
+        TopAnagrams topAnagrams = anagrammer.findTopAnagrams("Elliot Bayes Potter", 2000, ForkJoinPool.commonPool());
+        // only the kept anagrams get sorted, not every anagram we found
+        List<ScoredAnagram> anagrams = topAnagrams.toSortedList();
+        System.out.println(anagrams.get(0).wordIds.length);
+        System.out.println(anagrams.get(anagrams.size()-1).wordIds.length);
+        System.out.println("Length: " + topAnagrams.count());
+        System.out.println(anagrams);
+        System.out.println(topAnagrams.getStats().toJson());
+    }
+
+    private static void writeAnagrams(AnagramMe anagrammer, String name, String[] args) {
+        AnagramWriter.Format format = AnagramWriter.Format.valueOf(args[0].toUpperCase());
+        String output = args.length > 1 ? args[1] : "-";
+        String count = args.length > 2 ? args[2] : "2000";
+        if (args.length > 3) {
+            anagrammer.setScorer(Scorer.named(args[3]));
+        }
+        try (AnagramWriter writer = output.equals("-")
+                ? AnagramWriter.toStdout(format)
+                : AnagramWriter.open(Paths.get(output), format)) {
+            if (count.equals("all")) {
+                anagrammer.findAnagrams(name, writer);
             }
-        });
-        System.out.println(anagrams.get(0).size());
-        System.out.println(anagrams.get(anagrams.size()-1).size());
-        System.out.println("Length: " + anagrams.size());
-        System.out.println(anagrams.subList(0, 2000));
+            else {
+                TopAnagrams topAnagrams = anagrammer.findTopAnagrams(name, Integer.parseInt(count), ForkJoinPool.commonPool());
+                writer.writeAll(topAnagrams.toSortedList());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 }
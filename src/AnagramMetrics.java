@@ -0,0 +1,151 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adds up the stats of every query an AnagramMe runs. Queries record once, when they finish, into striped adders, so
+ * leaving this on costs next to nothing even with many concurrent queries.
+ */
+public class AnagramMetrics implements AnagramMetricsMBean {
+    private final AnagramMe anagrammer;
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder nodesVisited = new LongAdder();
+    private final LongAdder filterDictCalls = new LongAdder();
+    private final LongAdder wordsScanned = new LongAdder();
+    private final LongAdder wordsRejected = new LongAdder();
+    private final LongAdder solutions = new LongAdder();
+    private final LongAdder anagrams = new LongAdder();
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+    private final LongAdder searchNanos = new LongAdder();
+    private final LongAdder sortNanos = new LongAdder();
+    volatile long loadNanos = 0;
+
+    public AnagramMetrics(AnagramMe anagrammer) {
+        this.anagrammer = anagrammer;
+    }
+
+    /**
+     * Adds a finished query's stats to the totals
+     *
+     * @param stats                    the stats of the query
+     */
+    public void record(SearchStats stats) {
+        queries.increment();
+        nodesVisited.add(stats.nodesVisited);
+        filterDictCalls.add(stats.filterDictCalls);
+        wordsScanned.add(stats.wordsScanned);
+        wordsRejected.add(stats.wordsRejected);
+        solutions.add(stats.solutions);
+        anagrams.add(stats.anagrams);
+        maxDepth.accumulate(stats.maxDepth);
+        searchNanos.add(stats.searchNanos);
+        sortNanos.add(stats.sortNanos);
+    }
+
+    /**
+     * Records time spent ranking results after the query itself was recorded
+     *
+     * @param nanos                    the time spent sorting
+     */
+    public void recordSort(long nanos) {
+        sortNanos.add(nanos);
+    }
+
+    /**
+     * Publishes these metrics on the platform MBean server
+     *
+     * @param name                     distinguishes this AnagramMe from others in the same JVM
+     * @throws JMException             if the name is taken or invalid
+     */
+    public void register(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(this, new ObjectName("nameanagrams:type=AnagramMetrics,name=" + ObjectName.quote(name)));
+    }
+
+    @Override
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    @Override
+    public long getNodesVisited() {
+        return nodesVisited.sum();
+    }
+
+    @Override
+    public long getFilterDictCalls() {
+        return filterDictCalls.sum();
+    }
+
+    @Override
+    public long getWordsScanned() {
+        return wordsScanned.sum();
+    }
+
+    @Override
+    public long getWordsRejected() {
+        return wordsRejected.sum();
+    }
+
+    @Override
+    public long getSolutions() {
+        return solutions.sum();
+    }
+
+    @Override
+    public long getAnagrams() {
+        return anagrams.sum();
+    }
+
+    @Override
+    public int getMaxDepth() {
+        return (int) maxDepth.get();
+    }
+
+    @Override
+    public double getLoadMillis() {
+        return loadNanos / 1e6;
+    }
+
+    @Override
+    public double getSearchMillis() {
+        return searchNanos.sum() / 1e6;
+    }
+
+    @Override
+    public double getSortMillis() {
+        return sortNanos.sum() / 1e6;
+    }
+
+    @Override
+    public double getSubproblemCacheHitRate() {
+        SubproblemCache subproblemCache = anagrammer.getSubproblemCache();
+        return subproblemCache == null ? -1 : subproblemCache.hitRate();
+    }
+
+    @Override
+    public double getResultCacheHitRate() {
+        ResultCache resultCache = anagrammer.getResultCache();
+        return resultCache == null ? -1 : resultCache.hitRate();
+    }
+
+    public String toJson() {
+        return "{\"queries\": " + getQueries()
+                + ", \"nodesVisited\": " + getNodesVisited()
+                + ", \"filterDictCalls\": " + getFilterDictCalls()
+                + ", \"wordsScanned\": " + getWordsScanned()
+                + ", \"wordsRejected\": " + getWordsRejected()
+                + ", \"solutions\": " + getSolutions()
+                + ", \"anagrams\": " + getAnagrams()
+                + ", \"maxDepth\": " + getMaxDepth()
+                + ", \"loadMillis\": " + getLoadMillis()
+                + ", \"searchMillis\": " + getSearchMillis()
+                + ", \"sortMillis\": " + getSortMillis()
+                + ", \"subproblemCacheHitRate\": " + getSubproblemCacheHitRate()
+                + ", \"resultCacheHitRate\": " + getResultCacheHitRate()
+                + "}";
+    }
+}
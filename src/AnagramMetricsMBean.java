@@ -0,0 +1,36 @@
+/**
+ * The totals of every query an AnagramMe has run, as seen through JMX
+ */
+public interface AnagramMetricsMBean {
+    long getQueries();
+
+    long getNodesVisited();
+
+    long getFilterDictCalls();
+
+    long getWordsScanned();
+
+    long getWordsRejected();
+
+    long getSolutions();
+
+    long getAnagrams();
+
+    int getMaxDepth();
+
+    double getLoadMillis();
+
+    double getSearchMillis();
+
+    double getSortMillis();
+
+    /**
+     * @return                         the hit rate of the subproblem cache, or -1 if it is off
+     */
+    double getSubproblemCacheHitRate();
+
+    /**
+     * @return                         the hit rate of the result cache, or -1 if it is off
+     */
+    double getResultCacheHitRate();
+}
@@ -0,0 +1,355 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.JMException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+/**
+ * A resident anagram service on a local HTTP port. The dictionary is loaded once and the JIT stays warm between
+ * queries, so a query costs only its search.
+ *
+ *   GET  /anagrams?name=Tom+Marvolo+Riddle&count=20     one name
+ *   POST /anagrams?count=20                              a batch, one name per line in the body
+ *   GET  /typeahead?session=abc&name=Tom+Marv&count=20   a name as it is typed, in one session per user
+ *   GET  /stats                                          the totals of every query so far, as JSON
+ *
+ * Every anagram comes back as one line: name, score and words separated by tabs, best first within each name.
+ *
+ * By default every name is searched in full. With budget=<ms>, each name gets that many milliseconds of search and
+ * returns the best anagrams found by then. The X-Complete header is false if any name ran out of time; those results
+ * are not cached.
+ *
+ * A typeahead session (see TypeaheadSession) keeps the words that fit the name between keystrokes, so a query that
+ * adds or takes away a letter only does the work that changed. The most recently used sessions are kept.
+ *
+ * A server can hold several weight profiles of a MergedDictionary; every endpoint takes a profile parameter, and
+ * without one the first profile answers.
+ */
+public class AnagramServer {
+    private static final int DEFAULT_COUNT = 2000;
+    // a result of this many anagrams per name is already megabytes; a bigger count only asks to run the heap out
+    private static final int MAX_COUNT = 100_000;
+    // no limit; callers opt in to the anytime search with budget=<ms>
+    private static final long DEFAULT_BUDGET_MILLIS = 0;
+    // the budgeted search is warmed up too, with about what a caller would give it
+    private static final long WARM_UP_BUDGET_MILLIS = 300;
+    private static final int MAX_SESSIONS = 256;
+    private static final String DEFAULT_PROFILE = "default";
+
+    // the anagrammer of each profile by name; the first one is the default
+    private final Map<String, AnagramMe> profiles;
+    private final HttpServer server;
+    private final Map<String, TypeaheadSession> sessions = new LinkedHashMap<String, TypeaheadSession>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TypeaheadSession> eldest) {
+            return size() > MAX_SESSIONS;
+        }
+    };
+
+    public AnagramServer(AnagramMe anagrammer, int port, int threads) throws IOException {
+        this(Collections.singletonMap(DEFAULT_PROFILE, anagrammer), port, threads);
+    }
+
+    /**
+     * @param profiles         the anagrammer of each profile by name; the first one answers queries without a profile
+     * @param port             the port to listen on
+     * @param threads          the number of queries to answer at once
+     */
+    public AnagramServer(Map<String, AnagramMe> profiles, int port, int threads) throws IOException {
+        if (profiles.isEmpty()) {
+            throw new IllegalArgumentException("The server needs at least one profile");
+        }
+        this.profiles = new LinkedHashMap<>(profiles);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/anagrams", this::handle);
+        server.createContext("/typeahead", this::handleTypeahead);
+        server.createContext("/stats", this::handleStats);
+        server.setExecutor(Executors.newFixedThreadPool(threads));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * Runs a few throwaway queries so that the first real one does not pay for interpretation and JIT compilation
+     *
+     * @param names            the names to warm up with
+     */
+    public void warmUp(String... names) {
+        for (AnagramMe anagrammer : profiles.values()) {
+            for (String name : names) {
+                anagrammer.findTopAnagrams(name, DEFAULT_COUNT);
+                anagrammer.findTopAnagrams(name, DEFAULT_COUNT, new SearchBudget(WARM_UP_BUDGET_MILLIS, 0));
+            }
+        }
+    }
+
+    /**
+     * @param query            the query parameters
+     * @return                 the anagrammer of the profile the query names, or of the default one
+     * @throws IllegalArgumentException if there is no profile by that name
+     */
+    private AnagramMe profile(Map<String, String> query) {
+        String name = query.get("profile");
+        if (name == null) {
+            return profiles.values().iterator().next();
+        }
+        AnagramMe anagrammer = profiles.get(name);
+        if (anagrammer == null) {
+            throw new IllegalArgumentException("No profile called " + name + "; there are " + profiles.keySet());
+        }
+        return anagrammer;
+    }
+
+    /**
+     * @param query            the query parameters
+     * @return                 the number of anagrams the query asks for, or the default
+     * @throws IllegalArgumentException if it is not a number from 1 to MAX_COUNT
+     */
+    private static int count(Map<String, String> query) {
+        if (!query.containsKey("count")) {
+            return DEFAULT_COUNT;
+        }
+        int count = Integer.parseInt(query.get("count"));
+        if (count < 1 || count > MAX_COUNT) {
+            throw new IllegalArgumentException("count must be from 1 to " + MAX_COUNT + ", got " + count);
+        }
+        return count;
+    }
+
+    /**
+     * @param query            the query parameters
+     * @return                 the time each name's search may take, or 0 for no limit
+     * @throws IllegalArgumentException if it is not a number or negative
+     */
+    private static long budgetMillis(Map<String, String> query) {
+        if (!query.containsKey("budget")) {
+            return DEFAULT_BUDGET_MILLIS;
+        }
+        long budgetMillis = Long.parseLong(query.get("budget"));
+        if (budgetMillis < 0) {
+            throw new IllegalArgumentException("budget must not be negative, got " + budgetMillis);
+        }
+        return budgetMillis;
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            AnagramMe anagrammer = profile(parseQuery(exchange.getRequestURI().getRawQuery()));
+            respond(exchange, 200, anagrammer.getMetrics().toJson() + "\n");
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, e.getMessage() + "\n");
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            AnagramMe anagrammer = profile(query);
+            int count = count(query);
+            long budgetMillis = budgetMillis(query);
+
+            List<String> names = new ArrayList<>();
+            if ("POST".equals(exchange.getRequestMethod())) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+                String nextLine;
+                while ((nextLine = reader.readLine()) != null) {
+                    if (!nextLine.isBlank()) {
+                        names.add(nextLine.trim());
+                    }
+                }
+            }
+            else if (query.containsKey("name")) {
+                names.add(query.get("name"));
+            }
+            if (names.isEmpty()) {
+                respond(exchange, 400, "Pass a name parameter, or POST one name per line\n");
+                return;
+            }
+
+            List<String> incompleteNames = new ArrayList<>();
+            String body = answer(anagrammer, names, count, budgetMillis, incompleteNames);
+            exchange.getResponseHeaders().set("X-Complete", String.valueOf(incompleteNames.isEmpty()));
+            respond(exchange, 200, body);
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, e.getMessage() + "\n");
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            respond(exchange, 500, "Search failed: " + e + "\n");
+        }
+    }
+
+    private void handleTypeahead(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            AnagramMe anagrammer = profile(query);
+            int count = count(query);
+            long budgetMillis = budgetMillis(query);
+            String sessionId = query.get("session");
+            String name = query.get("name");
+            if (sessionId == null || name == null) {
+                respond(exchange, 400, "Pass a session and a name parameter\n");
+                return;
+            }
+
+            TypeaheadSession session;
+            synchronized (sessions) {
+                // a session follows one profile's dictionary, so switching profiles starts another
+                session = sessions.computeIfAbsent(anagrammer.dictPath + "\t" + sessionId, id -> new TypeaheadSession(anagrammer));
+            }
+            TopAnagrams topAnagrams;
+            // one user types one keystroke at a time, so this hardly ever waits
+            synchronized (session) {
+                session.setName(name);
+                topAnagrams = session.findTopAnagrams(count, budgetMillis > 0 ? new SearchBudget(budgetMillis, 0) : null);
+            }
+
+            StringBuilder body = new StringBuilder();
+            appendAnagrams(body, name, topAnagrams.toSortedList());
+            exchange.getResponseHeaders().set("X-Complete", String.valueOf(topAnagrams.isComplete()));
+            respond(exchange, 200, body.toString());
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, e.getMessage() + "\n");
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            respond(exchange, 500, "Search failed: " + e + "\n");
+        }
+    }
+
+    /**
+     * Searches a batch of names. The dictionary is filtered once against the union of their letters, and each search
+     * starts from that instead of the full dictionary.
+     *
+     * @param anagrammer       the anagrammer of the query's profile
+     * @param names            the names to anagram
+     * @param count            the number of anagrams to return per name
+     * @param budgetMillis     the time each name's search may take, or 0 for no limit
+     * @param incompleteNames  where to add the names whose search ran out of time
+     * @return                 the response body
+     */
+    String answer(AnagramMe anagrammer, List<String> names, int count, long budgetMillis, List<String> incompleteNames) {
+        // names the result cache already answers do not need to widen the batch filter
+        ResultCache resultCache = anagrammer.getResultCache();
+        Map<String, List<ScoredAnagram>> results = new HashMap<>();
+        List<String> uncachedNames = new ArrayList<>();
+        for (String name : names) {
+            List<ScoredAnagram> cached = resultCache == null ? null : resultCache.get(anagrammer.resultKey(name), count);
+            if (cached != null) {
+                results.put(name, cached);
+            }
+            else if (!uncachedNames.contains(name)) {
+                uncachedNames.add(name);
+            }
+        }
+
+        List<FrequencyContainer> batchDict = uncachedNames.size() > 1 ? anagrammer.filterForBatch(uncachedNames) : anagrammer.signatureDict;
+        for (String name : uncachedNames) {
+            if (budgetMillis <= 0) {
+                results.put(name, anagrammer.searchBestAnagrams(name, count, batchDict));
+                continue;
+            }
+            TopAnagrams topAnagrams = anagrammer.findTopAnagrams(name, count, batchDict, new SearchBudget(budgetMillis, 0));
+            List<ScoredAnagram> anagrams = topAnagrams.toSortedList();
+            results.put(name, anagrams);
+            // a cut-off result would keep answering for the name after a later query had time to finish
+            if (!topAnagrams.isComplete()) {
+                incompleteNames.add(name);
+            }
+            else if (resultCache != null) {
+                resultCache.put(anagrammer.resultKey(name), count, anagrams);
+            }
+        }
+
+        StringBuilder body = new StringBuilder();
+        for (String name : names) {
+            appendAnagrams(body, name, results.get(name));
+        }
+        return body.toString();
+    }
+
+    private static void appendAnagrams(StringBuilder body, String name, List<ScoredAnagram> anagrams) {
+        for (ScoredAnagram anagram : anagrams) {
+            body.append(name).append('\t').append(anagram.score).append('\t');
+            List<FrequencyContainer> words = anagram.words();
+            for (int i = 0; i < words.size(); i++) {
+                body.append(i == 0 ? "" : " ").append(words.get(i).word);
+            }
+            body.append('\n');
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0) {
+                query.put(
+                        URLDecoder.decode(parameter.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8)
+                );
+            }
+        }
+        return query;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, JMException {
+        // arguments: dictionary path, port, optionally a directory to persist cached results in, and optionally weight
+        // profiles (see MergedDictionary.parseProfiles), in which case the dictionary path is a comma-separated list
+        // of the dictionaries to merge
+        String dictPath = args.length > 0 ? args[0] : "./log-words.txt";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        String spillDirectory = args.length > 2 && !args[2].equals("-") ? args[2] : null;
+
+        Map<String, AnagramMe> profiles = new LinkedHashMap<>();
+        if (args.length > 3) {
+            MergedDictionary merged = new MergedDictionary(dictPath.split(","));
+            for (Map.Entry<String, Map<String, Double>> profile : MergedDictionary.parseProfiles(args[3]).entrySet()) {
+                profiles.put(profile.getKey(), merged.addProfile(profile.getKey(), profile.getValue()));
+            }
+        }
+        else {
+            profiles.put(DEFAULT_PROFILE, new AnagramMe(dictPath));
+        }
+        for (Map.Entry<String, AnagramMe> profile : profiles.entrySet()) {
+            AnagramMe anagrammer = profile.getValue();
+            anagrammer.enableSubproblemCache(2_000_000);
+            // the cache keys name the profile, so the profiles can share a spill directory
+            anagrammer.enableResultCache(10_000, spillDirectory);
+            anagrammer.registerMetrics(args.length > 3 ? "merged:" + profile.getKey() : dictPath);
+        }
+        AnagramServer server = new AnagramServer(profiles, port, Runtime.getRuntime().availableProcessors());
+        server.warmUp("Tom Marvolo Riddle", "Elliot Bayes Potter");
+        server.start();
+        System.out.println("Serving anagrams on http://127.0.0.1:" + port + "/anagrams");
+    }
+}
@@ -0,0 +1,49 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Receives anagrams as the search finds them
+ */
+public interface AnagramSink {
+    /**
+     * Called once for every complete anagram
+     *
+     * @param anagram                  the words of the anagram, in the order they were chosen
+     */
+    void accept(List<FrequencyContainer> anagram);
+
+    /**
+     * Called once for every complete anagram, as word ids. Sinks that can work on the ids directly override this to
+     * avoid building a list per anagram; by default the ids are decoded and passed to accept(List).
+     *
+     * @param wordIds                  the ids of the words, in the order they were chosen; only valid during the call
+     * @param length                   the number of words
+     * @param dict                     the dict the ids index into
+     * @param score                    the score of the anagram, from the search's scorer
+     */
+    default void acceptIds(int[] wordIds, int length, List<FrequencyContainer> dict, double score) {
+        List<FrequencyContainer> anagram = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            anagram.add(dict.get(wordIds[i]));
+        }
+        accept(anagram);
+    }
+
+    /**
+     * Anagrams scoring at or below the threshold would be dropped, so the search may skip any branch that cannot beat it
+     *
+     * @return                         the score a new anagram has to beat
+     */
+    default double threshold() {
+        return Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Lets the sink stop the search early; it is checked before every word the search tries
+     *
+     * @return                         true if the search should unwind without emitting anything else
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+}
@@ -0,0 +1,260 @@
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes anagrams out one line at a time as NDJSON or CSV, either straight from a search (it is a sink) or while
+ * draining a top-K collector. Lines go through one fixed buffer into a channel, so memory stays the same however many
+ * anagrams are written.
+ *
+ * Each anagram has its words, the score of each word, the total of those and the penalized score it is ranked by.
+ */
+public class AnagramWriter implements AnagramSink, Closeable {
+    public enum Format {
+        NDJSON, CSV
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // a full buffer is always written out; besides that we flush every FLUSH_INTERVAL lines or FLUSH_NANOS, whichever
+    // comes first, so a reader can follow along
+    private static final int FLUSH_INTERVAL = 1024;
+    private static final long FLUSH_NANOS = 1_000_000_000L;
+
+    private final WritableByteChannel channel;
+    private final Format format;
+    private final boolean closeChannel;
+    // scores anagrams handed in as lists; anagrams from a search come with their score
+    private final Scorer scorer;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final StringBuilder line = new StringBuilder(256);
+    // lets accept(List) reuse the id path; the list it gets serves as its own table
+    private int[] listIds = new int[8];
+    private long written = 0;
+    private int unflushed = 0;
+    private long lastFlush = System.nanoTime();
+    private IOException failure;
+
+    public AnagramWriter(WritableByteChannel channel, Format format, boolean closeChannel) {
+        this(channel, format, closeChannel, AnagramMe.defaultScorer());
+    }
+
+    /**
+     * @param channel                  where the lines go
+     * @param format                   the format of the lines
+     * @param closeChannel             whether close() closes the channel as well
+     * @param scorer                   scores anagrams passed to accept(List)
+     */
+    public AnagramWriter(WritableByteChannel channel, Format format, boolean closeChannel, Scorer scorer) {
+        this.channel = channel;
+        this.scorer = scorer;
+        this.format = format;
+        this.closeChannel = closeChannel;
+        if (format == Format.CSV) {
+            append("words,scores,total,score\n");
+        }
+    }
+
+    /**
+     * Opens a writer on a file, replacing whatever was there
+     *
+     * @param path                     the file to write
+     * @param format                   the format of the lines
+     * @return                         the writer; close it to write out the rest
+     */
+    public static AnagramWriter open(Path path, Format format) throws IOException {
+        FileChannel channel = FileChannel.open(
+                path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING
+        );
+        return new AnagramWriter(channel, format, true);
+    }
+
+    /**
+     * Opens a writer on stdout; closing it flushes but leaves stdout open
+     */
+    public static AnagramWriter toStdout(Format format) {
+        return new AnagramWriter(Channels.newChannel(new FileOutputStream(FileDescriptor.out)), format, false);
+    }
+
+    @Override
+    public void accept(List<FrequencyContainer> anagram) {
+        if (listIds.length < anagram.size()) {
+            listIds = new int[anagram.size()];
+        }
+        for (int i = 0; i < anagram.size(); i++) {
+            listIds[i] = i;
+        }
+        acceptIds(listIds, anagram.size(), anagram, scorer.scoreOf(anagram));
+    }
+
+    @Override
+    public void acceptIds(int[] wordIds, int length, List<FrequencyContainer> dict, double score) {
+        long total = 0;
+        for (int i = 0; i < length; i++) {
+            total += dict.get(wordIds[i]).frequency;
+        }
+        write(wordIds, length, dict, total, score);
+    }
+
+    /**
+     * Writes a ranked anagram, e.g. while draining TopAnagrams.toSortedList()
+     *
+     * @param anagram                  the anagram to write
+     */
+    public void write(ScoredAnagram anagram) {
+        long total = 0;
+        for (int wordId : anagram.wordIds) {
+            total += anagram.dict.get(wordId).frequency;
+        }
+        write(anagram.wordIds, anagram.wordIds.length, anagram.dict, total, anagram.score);
+    }
+
+    public void writeAll(Iterable<ScoredAnagram> anagrams) {
+        for (ScoredAnagram anagram : anagrams) {
+            if (failure != null) {
+                return;
+            }
+            write(anagram);
+        }
+    }
+
+    private void write(int[] wordIds, int length, List<FrequencyContainer> dict, long total, double score) {
+        if (failure != null) {
+            return;
+        }
+
+        line.setLength(0);
+        if (format == Format.NDJSON) {
+            line.append("{\"words\":[");
+            for (int i = 0; i < length; i++) {
+                line.append(i == 0 ? "\"" : ",\"");
+                appendJsonEscaped(dict.get(wordIds[i]).word);
+                line.append('"');
+            }
+            line.append("],\"scores\":[");
+            for (int i = 0; i < length; i++) {
+                line.append(i == 0 ? "" : ",").append(dict.get(wordIds[i]).frequency);
+            }
+            line.append("],\"total\":").append(total).append(",\"score\":").append(score).append("}\n");
+        }
+        else {
+            // words and scores are space separated within their column; a word with a comma or quote gets quoted
+            boolean quote = false;
+            for (int i = 0; i < length; i++) {
+                String word = dict.get(wordIds[i]).word;
+                quote |= word.indexOf(',') >= 0 || word.indexOf('"') >= 0;
+            }
+            line.append(quote ? "\"" : "");
+            for (int i = 0; i < length; i++) {
+                String word = dict.get(wordIds[i]).word;
+                line.append(i == 0 ? "" : " ").append(quote ? word.replace("\"", "\"\"") : word);
+            }
+            line.append(quote ? "\"," : ",");
+            for (int i = 0; i < length; i++) {
+                line.append(i == 0 ? "" : " ").append(dict.get(wordIds[i]).frequency);
+            }
+            line.append(',').append(total).append(',').append(score).append('\n');
+        }
+
+        append(line);
+        written++;
+        long now = System.nanoTime();
+        if (++unflushed >= FLUSH_INTERVAL || now - lastFlush >= FLUSH_NANOS) {
+            unflushed = 0;
+            lastFlush = now;
+            drain();
+        }
+    }
+
+    private void appendJsonEscaped(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            char character = word.charAt(i);
+            if (character == '"' || character == '\\') {
+                line.append('\\').append(character);
+            }
+            else if (character < 0x20) {
+                line.append(String.format("\\u%04x", (int) character));
+            }
+            else {
+                line.append(character);
+            }
+        }
+    }
+
+    /**
+     * Encodes text into the buffer, writing the buffer out whenever it fills up
+     */
+    private void append(CharSequence text) {
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        while (failure == null) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                drain();
+            }
+            else {
+                break;
+            }
+        }
+    }
+
+    private void drain() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            // we can't throw from a sink, so stop the search and report it from close()
+            failure = e;
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes out everything buffered so far
+     */
+    public void flush() throws IOException {
+        drain();
+        unflushed = 0;
+        lastFlush = System.nanoTime();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return                         the number of anagrams written so far
+     */
+    public long written() {
+        return written;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return failure != null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            if (closeChannel) {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,474 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A precompiled dictionary that is searched straight from a memory map. The converter does the parsing, sorting,
+ * letter counting and signature grouping once, so opening a dictionary only reads its header, and the mapped pages are
+ * shared between JVMs on the same host. A word becomes a FrequencyContainer on the heap the first time the search
+ * needs it; the scan over every signature at the top of a search reads the records in place, so only the words that
+ * fit some name are ever built.
+ *
+ * Layout (big-endian):
+ *   header:     magic, version, word count, word bytes, signature count, min word length (6 ints),
+ *               fingerprint (long)
+ *   records:    one per word, largest score first                           (RECORD_SIZE bytes each)
+ *               score int, word offset int, signature int, letter mask int, length byte, flags byte,
+ *               a-z counts (26 bytes)
+ *   words:      the words themselves, UTF-8, back to back
+ *   signatures: the record of each signature's best word, best first      (signature count ints)
+ *               where each signature's other words start in the members   (signature count + 1 ints)
+ *               the other words of every signature, best first            (word count - signature count ints)
+ *
+ * The signature of a word is the number of its group of words with the same letters, in the order of their best words.
+ */
+public class BinaryDictionary {
+    public static final String EXTENSION = ".bin";
+    private static final int MAGIC = 0x414E4147; // "ANAG"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 44;
+    // where each field sits in a record
+    private static final int SCORE = 0;
+    private static final int WORD_OFFSET = 4;
+    private static final int SIGNATURE = 8;
+    private static final int LETTER_MASK = 12;
+    private static final int LENGTH = 16;
+    private static final int FLAGS = 17;
+    private static final int COUNTS = 18;
+    // the word has characters outside a-z, so its counts have to be rebuilt from the word itself
+    private static final int FLAG_OTHER_CHARACTERS = 1;
+    // the record only has a byte for the length of the word
+    private static final int MAX_WORD_BYTES = 0xFF;
+
+    private final ByteBuffer buffer;
+    private final int wordCount;
+    private final int signatureCount;
+    private final int minWordLength;
+    private final long fingerprint;
+    private final int wordsStart;
+    private final int representativesStart;
+    private final int memberOffsetsStart;
+    private final int membersStart;
+    // the words built so far, by record; a word is only ever built once, so its id and groups stay the same object
+    private final AtomicReferenceArray<FrequencyContainer> containers;
+    private final List<FrequencyContainer> words;
+    private final List<FrequencyContainer> signatures;
+
+    private BinaryDictionary(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.wordCount = buffer.getInt(8);
+        int wordBytes = buffer.getInt(12);
+        this.signatureCount = buffer.getInt(16);
+        this.minWordLength = buffer.getInt(20);
+        this.fingerprint = buffer.getLong(24);
+        this.wordsStart = HEADER_SIZE + wordCount * RECORD_SIZE;
+        this.representativesStart = wordsStart + wordBytes;
+        this.memberOffsetsStart = representativesStart + signatureCount * 4;
+        this.membersStart = memberOffsetsStart + (signatureCount + 1) * 4;
+        this.containers = new AtomicReferenceArray<>(wordCount);
+        this.words = new Words();
+        this.signatures = new Signatures();
+    }
+
+    /**
+     * @return                         every word, largest score first, built as they are read
+     */
+    public List<FrequencyContainer> words() {
+        return words;
+    }
+
+    /**
+     * @return                         the best word of each signature, largest score first, with the rest of each
+     *                                 group in its sameLetters
+     */
+    public List<FrequencyContainer> signatures() {
+        return signatures;
+    }
+
+    /**
+     * @return                         the length of the shortest word
+     */
+    public int minWordLength() {
+        return minWordLength;
+    }
+
+    /**
+     * @return                         the hash of every word and score that AnagramMe would compute over the words
+     */
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Finds the signatures the letters can spell, like AnagramMe.filterDict over signatures() from a given one on, but
+     * checking the records in place, so the words that do not fit are never built
+     *
+     * @param from                     the first signature we may use
+     * @param letters                  the letters to spell them with
+     * @return                         the best word of each signature that fits, largest score first
+     */
+    public List<FrequencyContainer> fittingSignatures(int from, FrequencyMap letters) {
+        List<FrequencyContainer> fitting = new ArrayList<>();
+        int poolSize = letters.size();
+        int poolMask = letters.mask();
+        for (int signature = from; signature < signatureCount; signature++) {
+            int index = representative(signature);
+            int record = HEADER_SIZE + index * RECORD_SIZE;
+            if ((buffer.get(record + FLAGS) & FLAG_OTHER_CHARACTERS) != 0) {
+                // the record only counts a-z, so these few are checked on the word itself
+                FrequencyContainer container = word(index);
+                if (container.length <= poolSize && (container.letterMask & ~poolMask) == 0
+                        && letters.contains(container.letters)) {
+                    fitting.add(container);
+                }
+                continue;
+            }
+            // most words are rejected here, by length or by using a letter the pool has none of
+            int letterMask = buffer.getInt(record + LETTER_MASK);
+            if ((buffer.get(record + LENGTH) & 0xFF) > poolSize || (letterMask & ~poolMask) != 0) {
+                continue;
+            }
+            if (fits(record, letterMask, letters)) {
+                fitting.add(word(index));
+            }
+        }
+        return fitting;
+    }
+
+    private boolean fits(int record, int letterMask, FrequencyMap letters) {
+        for (int remaining = letterMask; remaining != 0; remaining &= remaining - 1) {
+            int letter = Integer.numberOfTrailingZeros(remaining);
+            if ((buffer.get(record + COUNTS + letter) & 0xFF) > letters.countAt(letter)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int representative(int signature) {
+        return buffer.getInt(representativesStart + signature * 4);
+    }
+
+    /**
+     * Gets the container of a word, building it from its record the first time
+     *
+     * @param index                    the record of the word, which is also its id
+     */
+    private FrequencyContainer word(int index) {
+        FrequencyContainer container = containers.get(index);
+        if (container != null) {
+            return container;
+        }
+
+        int record = HEADER_SIZE + index * RECORD_SIZE;
+        int length = buffer.get(record + LENGTH) & 0xFF;
+        byte[] encoded = new byte[length];
+        buffer.get(wordsStart + buffer.getInt(record + WORD_OFFSET), encoded);
+        String word = new String(encoded, StandardCharsets.UTF_8);
+
+        FrequencyMap letters;
+        if ((buffer.get(record + FLAGS) & FLAG_OTHER_CHARACTERS) != 0) {
+            letters = FrequencyMap.of(word);
+        }
+        else {
+            letters = new FrequencyMap();
+            for (int letter = 0; letter < 26; letter++) {
+                int count = buffer.get(record + COUNTS + letter) & 0xFF;
+                if (count > 0) {
+                    letters.put((char) ('a' + letter), count);
+                }
+            }
+        }
+
+        container = new FrequencyContainer(buffer.getInt(record + SCORE), word, letters);
+        container.id = index;
+        int signature = buffer.getInt(record + SIGNATURE);
+        if (representative(signature) == index) {
+            int first = buffer.getInt(memberOffsetsStart + signature * 4);
+            int last = buffer.getInt(memberOffsetsStart + (signature + 1) * 4);
+            for (int member = first; member < last; member++) {
+                container.sameLetters.add(word(buffer.getInt(membersStart + member * 4)));
+            }
+        }
+        // two threads can build the same word at once; everyone gets whichever got in first
+        return containers.compareAndSet(index, null, container) ? container : containers.get(index);
+    }
+
+    private class Words extends AbstractList<FrequencyContainer> implements RandomAccess {
+        @Override
+        public FrequencyContainer get(int index) {
+            Objects.checkIndex(index, wordCount);
+            return word(index);
+        }
+
+        @Override
+        public int size() {
+            return wordCount;
+        }
+    }
+
+    private class Signatures extends AbstractList<FrequencyContainer> implements RandomAccess {
+        @Override
+        public FrequencyContainer get(int signature) {
+            Objects.checkIndex(signature, signatureCount);
+            return word(representative(signature));
+        }
+
+        @Override
+        public int size() {
+            return signatureCount;
+        }
+    }
+
+    /**
+     * Maps a binary dictionary; nothing is read beyond the header until the words are used
+     *
+     * @param path                     the path of the binary dictionary
+     * @return                         the dictionary
+     * @throws IOException             if the file cannot be read or is not a binary dictionary
+     */
+    public static BinaryDictionary open(String path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException(path + " is not a version " + VERSION + " binary dictionary");
+        }
+        return new BinaryDictionary(buffer);
+    }
+
+    /**
+     * Compiles a word:score text dictionary into the binary format, keeping every line
+     *
+     * @param textPath                 the text dictionary to read
+     * @param binaryPath               where to write the binary dictionary
+     * @throws IOException
+     */
+    public static void convert(String textPath, String binaryPath) throws IOException {
+        List<FrequencyContainer> dict = new ArrayList<>();
+        for (FrequencyContainer container : AnagramMe.readTextDict(textPath, AnagramMe.WORD_LENGTH_THRESHOLD, Integer.MAX_VALUE)) {
+            if (container.word.getBytes(StandardCharsets.UTF_8).length <= MAX_WORD_BYTES) {
+                dict.add(container);
+            }
+        }
+        AnagramMe.sortByScore(dict);
+        write(dict, binaryPath);
+    }
+
+    /**
+     * Writes an already sorted dictionary in the binary format
+     *
+     * @param dict                     the words, largest score first
+     * @param binaryPath               where to write the binary dictionary
+     * @throws IOException
+     * @throws IllegalArgumentException if a word is longer than 255 bytes in UTF-8; dropping it would shift the ids of
+     *                                 the words after it, so callers that can lose words filter them first
+     */
+    public static void write(List<FrequencyContainer> dict, String binaryPath) throws IOException {
+        // check them all first, so a bad word does not leave half a file behind
+        for (FrequencyContainer container : dict) {
+            checkLength(container.word);
+        }
+        try (Writer writer = new Writer(binaryPath)) {
+            for (FrequencyContainer container : dict) {
+                writer.add(container.word, container.frequency);
+            }
+        }
+    }
+
+    private static byte[] checkLength(String word) {
+        byte[] encoded = word.getBytes(StandardCharsets.UTF_8);
+        if (encoded.length > MAX_WORD_BYTES) {
+            throw new IllegalArgumentException("Words can be at most " + MAX_WORD_BYTES + " bytes, got " + word);
+        }
+        return encoded;
+    }
+
+    /**
+     * Writes a binary dictionary one word at a time, so the words never have to be in memory together. The records go
+     * straight into the file and the words into a temporary file next to it, which is appended on close, when the
+     * header with the counts is written too. The file is only a valid dictionary once the writer is closed.
+     */
+    public static class Writer implements Closeable {
+        private final FileChannel channel;
+        private final DataOutputStream records;
+        private final Path wordsPath;
+        private final OutputStream words;
+        private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        // signatures are numbered as they first turn up, which is by their best word, since the words come sorted
+        private final Map<String, Integer> signatureNumbers = new HashMap<>();
+        private int[] signatureOf = new int[1024];
+        private int wordCount = 0;
+        private int wordBytes = 0;
+        private int minWordLength = Integer.MAX_VALUE;
+        // the same hash AnagramMe computes over a dict, so opening the file does not have to read every word for it
+        private long fingerprint = 1125899906842597L;
+        private boolean closed = false;
+
+        /**
+         * @param binaryPath           where to write the binary dictionary, replacing whatever is there
+         */
+        public Writer(String binaryPath) throws IOException {
+            Path path = Paths.get(binaryPath).toAbsolutePath();
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            channel.position(HEADER_SIZE);
+            this.records = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            this.wordsPath = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".words");
+            this.words = new BufferedOutputStream(Files.newOutputStream(wordsPath));
+        }
+
+        /**
+         * Adds the next word; words have to come largest score first
+         *
+         * @param word                 the word
+         * @param score                its score
+         * @throws IllegalArgumentException if the word is longer than 255 bytes in UTF-8
+         */
+        public void add(String word, int score) throws IOException {
+            byte[] encoded = checkLength(word);
+            // a new signature gets the next number
+            int signature = signatureNumbers.computeIfAbsent(FrequencyContainer.signature(word), key -> signatureNumbers.size());
+
+            boolean otherCharacters = false;
+            byte[] counts = new byte[26];
+            int letterMask = 0;
+            for (int j = 0; j < word.length(); j++) {
+                char character = word.charAt(j);
+                if (character >= 'a' && character <= 'z') {
+                    counts[character - 'a']++;
+                    letterMask |= 1 << (character - 'a');
+                }
+                else {
+                    otherCharacters = true;
+                }
+            }
+
+            record.clear();
+            record.putInt(score)
+                    .putInt(wordBytes)
+                    .putInt(signature)
+                    .putInt(letterMask)
+                    .put((byte) encoded.length)
+                    .put((byte) (otherCharacters ? FLAG_OTHER_CHARACTERS : 0))
+                    .put(counts);
+            records.write(record.array());
+            words.write(encoded);
+
+            if (wordCount == signatureOf.length) {
+                signatureOf = Arrays.copyOf(signatureOf, wordCount * 2);
+            }
+            signatureOf[wordCount++] = signature;
+            wordBytes += encoded.length;
+            minWordLength = Math.min(minWordLength, word.length());
+            fingerprint = 31 * fingerprint + word.hashCode();
+            fingerprint = 31 * fingerprint + score;
+        }
+
+        /**
+         * Writes the signature section after the words: each signature's best word, then where each signature's other
+         * words start, then those words, all in word order within a signature
+         */
+        private void writeSignatures() throws IOException {
+            int signatureCount = signatureNumbers.size();
+            int[] representatives = new int[signatureCount];
+            int[] memberOffsets = new int[signatureCount + 1];
+            Arrays.fill(representatives, -1);
+            for (int word = 0; word < wordCount; word++) {
+                int signature = signatureOf[word];
+                if (representatives[signature] == -1) {
+                    representatives[signature] = word;
+                }
+                else {
+                    memberOffsets[signature + 1]++;
+                }
+            }
+            for (int signature = 0; signature < signatureCount; signature++) {
+                memberOffsets[signature + 1] += memberOffsets[signature];
+            }
+            int[] members = new int[wordCount - signatureCount];
+            int[] next = Arrays.copyOf(memberOffsets, signatureCount);
+            for (int word = 0; word < wordCount; word++) {
+                int signature = signatureOf[word];
+                if (representatives[signature] != word) {
+                    members[next[signature]++] = word;
+                }
+            }
+
+            DataOutputStream section = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            for (int representative : representatives) {
+                section.writeInt(representative);
+            }
+            for (int offset : memberOffsets) {
+                section.writeInt(offset);
+            }
+            for (int member : members) {
+                section.writeInt(member);
+            }
+            section.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                records.flush();
+                words.close();
+                // the records end where the words begin
+                try (FileChannel wordsChannel = FileChannel.open(wordsPath, StandardOpenOption.READ)) {
+                    long size = wordsChannel.size();
+                    for (long position = 0; position < size; ) {
+                        position += wordsChannel.transferTo(position, size - position, channel);
+                    }
+                }
+
+                writeSignatures();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putInt(wordCount).putInt(wordBytes).putInt(signatureNumbers.size())
+                        .putInt(minWordLength).putLong(fingerprint).flip();
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+            } finally {
+                channel.close();
+                Files.deleteIfExists(wordsPath);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 2) {
+            convert(args[0], args[1]);
+        }
+        else {
+            convert("./log-words.txt", "./log-words.bin");
+            convert("./words.txt", "./words.bin");
+        }
+    }
+}
@@ -0,0 +1,393 @@
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Crawls pages concurrently and counts the words on them. What to do with a page (which words count, which links to
+ * follow) is up to a PageHandler, so both scrapers share this engine.
+ *
+ * The frontier is a lock-free queue, the visited set a concurrent set and the word counts are sharded, so fetchers
+ * hardly ever wait on each other except through the concurrency limits: one for the whole crawl and one per host.
+ * Every fetch runs on its own virtual thread when the JVM has them (Java 21+), and on a pool of platform threads
+ * otherwise. The counts spill to sorted runs on disk once they outgrow a quarter of the heap (see ShardedWordCounts).
+ *
+ * The frontier, visited set and counts can be checkpointed to a file every so many pages, and a crawl started with the
+ * same checkpoint path picks up where the last one stopped. The counts themselves are not copied into the checkpoint:
+ * it names the runs in the <checkpoint>.runs directory that hold them. A page's counts and its leaving the pages in
+ * flight happen together, so a resumed crawl neither counts a page twice nor drops one.
+ */
+public class CrawlEngine {
+    /**
+     * Site-specific handling of a fetched page
+     */
+    public interface PageHandler {
+        /**
+         * @param url                  the page's URL
+         * @param doc                  the parsed page
+         * @param engine               the engine, for offer, revisit and count
+         */
+        void handle(String url, Document doc, CrawlEngine engine);
+    }
+
+    private final PageFetcher fetcher;
+    private final PageHandler handler;
+    private final int concurrency;
+    private final int perHostConcurrency;
+
+    private final Queue<String> frontier = new ConcurrentLinkedQueue<>();
+    private final Set<String> visited = ConcurrentHashMap.newKeySet();
+    // pages being fetched right now, with how many fetches of each, since the same URL (Special:Random, say) can be
+    // fetched more than once at a time; a checkpoint puts them back on the frontier
+    private final Map<String, Integer> inFlight = new ConcurrentHashMap<>();
+    private final long memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+    private ShardedWordCounts counts = new ShardedWordCounts(null, memoryBudget);
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong pages = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    // woken whenever a page finishes, so the dispatcher can look at the frontier again
+    private final Object progress = new Object();
+
+    private Path checkpointPath;
+    // pages between progress reports, and between checkpoints if there are any
+    private long checkpointInterval = 1000;
+    private final ReentrantLock checkpointLock = new ReentrantLock();
+    // held shared while a page is counted or moves between the frontier and inFlight, and exclusively by a checkpoint
+    private final ReadWriteLock pageLock = new ReentrantReadWriteLock();
+
+    /**
+     * @param fetcher                  where pages come from
+     * @param handler                  what to do with each page
+     * @param concurrency              the most pages fetched at once
+     * @param perHostConcurrency       the most pages fetched at once from any one host
+     */
+    public CrawlEngine(PageFetcher fetcher, PageHandler handler, int concurrency, int perHostConcurrency) {
+        this.fetcher = fetcher;
+        this.handler = handler;
+        this.concurrency = concurrency;
+        this.perHostConcurrency = perHostConcurrency;
+    }
+
+    /**
+     * Checkpoints the crawl to a file every interval pages, resuming from it first if it already exists
+     *
+     * @param path                     the checkpoint file
+     * @param interval                 the number of pages between checkpoints
+     * @throws IOException             if an existing checkpoint cannot be read
+     */
+    public void checkpointTo(Path path, long interval) throws IOException {
+        this.checkpointPath = path;
+        this.checkpointInterval = interval;
+        this.counts = new ShardedWordCounts(path.resolveSibling(path.getFileName() + ".runs"), memoryBudget);
+        if (Files.exists(path)) {
+            loadCheckpoint(path);
+        }
+    }
+
+    /**
+     * Queues a page unless it was queued before
+     *
+     * @param url                      the page to visit
+     */
+    public void offer(String url) {
+        if (visited.add(url)) {
+            frontier.add(url);
+        }
+    }
+
+    /**
+     * Queues a page even if it was visited before, e.g. a page that is different every time
+     *
+     * @param url                      the page to visit
+     */
+    public void revisit(String url) {
+        visited.add(url);
+        frontier.add(url);
+    }
+
+    public void count(String word) {
+        counts.add(word, 1);
+    }
+
+    /**
+     * Adds a page's word counts, one update per distinct word rather than per occurrence
+     *
+     * @param pageWords                the words counted on one page
+     */
+    public void count(WordCounter pageWords) {
+        counts.addAll(pageWords);
+    }
+
+    /**
+     * @return                         the number of distinct words counted so far
+     */
+    public long distinctWords() {
+        return counts.distinctWords();
+    }
+
+    public long pages() {
+        return pages.get();
+    }
+
+    public long failures() {
+        return failures.get();
+    }
+
+    /**
+     * Crawls until the frontier runs dry or the engine has counted wordTarget distinct words
+     *
+     * @param wordTarget               the number of distinct words to stop at
+     */
+    public void crawl(int wordTarget) throws InterruptedException {
+        ExecutorService executor = newExecutor(concurrency);
+        Semaphore permits = new Semaphore(concurrency);
+        long nextCheckpoint = pages.get() + checkpointInterval;
+        try {
+            while (counts.distinctWords() < wordTarget) {
+                // progress goes out once an interval rather than for every page
+                if (pages.get() >= nextCheckpoint) {
+                    System.out.println("Pages: " + pages.get() + ", distinct words: " + counts.distinctWords());
+                    if (checkpointPath != null) {
+                        checkpoint();
+                    }
+                    nextCheckpoint = pages.get() + checkpointInterval;
+                }
+
+                String url;
+                pageLock.readLock().lock();
+                try {
+                    url = frontier.poll();
+                    if (url != null) {
+                        inFlight.merge(url, 1, Integer::sum);
+                    }
+                } finally {
+                    pageLock.readLock().unlock();
+                }
+                if (url == null) {
+                    if (active.get() == 0 && frontier.isEmpty()) {
+                        break;
+                    }
+                    // something is still being fetched and may add to the frontier
+                    synchronized (progress) {
+                        if (frontier.isEmpty() && active.get() > 0) {
+                            progress.wait(50);
+                        }
+                    }
+                    continue;
+                }
+
+                permits.acquire();
+                active.incrementAndGet();
+                executor.execute(() -> {
+                    try {
+                        visit(url);
+                    } finally {
+                        active.decrementAndGet();
+                        permits.release();
+                        synchronized (progress) {
+                            progress.notifyAll();
+                        }
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        if (checkpointPath != null) {
+            checkpoint();
+        }
+    }
+
+    private void visit(String url) {
+        boolean done = false;
+        Semaphore hostPermit = hostPermits.computeIfAbsent(hostOf(url), host -> new Semaphore(perHostConcurrency));
+        try {
+            hostPermit.acquire();
+            String html;
+            try {
+                html = fetcher.fetch(url);
+            } finally {
+                hostPermit.release();
+            }
+            Document doc = Jsoup.parse(html, url);
+            // once its words are counted the page is done, and a checkpoint must not see one without the other
+            pageLock.readLock().lock();
+            try {
+                handler.handle(url, doc, this);
+                leaveFlight(url);
+                done = true;
+            } finally {
+                pageLock.readLock().unlock();
+            }
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            if (!done) {
+                leaveFlight(url);
+            }
+        }
+
+        pages.incrementAndGet();
+    }
+
+    /**
+     * Ends one fetch of the URL, leaving any other fetches of it in flight
+     */
+    private void leaveFlight(String url) {
+        inFlight.computeIfPresent(url, (key, fetches) -> fetches == 1 ? null : fetches - 1);
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? "" : host;
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Runs fetches on virtual threads where the JVM has them. We look them up reflectively so this still builds and
+     * runs on older JVMs, which get a plain pool instead.
+     */
+    private static ExecutorService newExecutor(int concurrency) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger threadCount = new AtomicInteger();
+            return Executors.newFixedThreadPool(concurrency, runnable -> {
+                Thread thread = new Thread(runnable, "crawl-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Writes the frontier, the visited set and the runs holding the counts to the checkpoint file. Fetches keep going
+     * meanwhile, but no page is counted while the counts are sealed and the frontier copied, so every page is either
+     * in the counts or back on the frontier, never both. Writing the sealed counts out (and any compaction) happens
+     * after that, while pages are counted again. If a checkpoint is already being written we skip this one.
+     */
+    public void checkpoint() {
+        if (!checkpointLock.tryLock()) {
+            return;
+        }
+        Path temporary = checkpointPath.resolveSibling(checkpointPath.getFileName() + ".tmp");
+        ShardedWordCounts.Seal seal;
+        List<String> frontierSnapshot = new ArrayList<>();
+        List<String> visitedSnapshot;
+        pageLock.writeLock().lock();
+        try {
+            seal = counts.seal();
+            // pages in flight have not been counted yet, so they go back on the frontier, once for every fetch
+            inFlight.forEach((url, fetches) -> frontierSnapshot.addAll(Collections.nCopies(fetches, url)));
+            frontierSnapshot.addAll(frontier);
+            visitedSnapshot = new ArrayList<>(visited);
+        } finally {
+            pageLock.writeLock().unlock();
+        }
+        List<Path> runs;
+        try {
+            runs = counts.flush(seal);
+        } catch (IOException e) {
+            e.printStackTrace();
+            checkpointLock.unlock();
+            return;
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            writer.write("#frontier\n");
+            for (String url : frontierSnapshot) {
+                writer.write(url + "\n");
+            }
+            writer.write("#visited\n");
+            for (String url : visitedSnapshot) {
+                writer.write(url + "\n");
+            }
+            writer.write("#runs\n");
+            for (Path run : runs) {
+                writer.write(run.getFileName() + "\n");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            checkpointLock.unlock();
+            return;
+        }
+        try {
+            Files.move(temporary, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // only now is nothing referring to the runs the flush merged away
+            counts.commit();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    private void loadCheckpoint(Path path) throws IOException {
+        List<String> runs = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String section = "";
+            String nextLine;
+            while ((nextLine = reader.readLine()) != null) {
+                if (nextLine.startsWith("#")) {
+                    section = nextLine;
+                }
+                else if (section.equals("#frontier")) {
+                    frontier.add(nextLine);
+                }
+                else if (section.equals("#visited")) {
+                    visited.add(nextLine);
+                }
+                else if (section.equals("#runs")) {
+                    runs.add(nextLine);
+                }
+                // checkpoints from before the counts spilled to runs had them inline
+                else if (section.equals("#counts")) {
+                    int separator = nextLine.lastIndexOf(':');
+                    counts.add(nextLine.substring(0, separator), Long.parseLong(nextLine.substring(separator + 1)));
+                }
+            }
+        }
+        counts.resume(runs);
+    }
+
+    /**
+     * Saves the counts as word:count lines, most frequent first
+     *
+     * @param saveLocation             the file to write
+     */
+    public void save(Path saveLocation) throws IOException {
+        counts.writeByCount(saveLocation);
+    }
+}
@@ -0,0 +1,159 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jsoup.Jsoup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves saved pages over local HTTP, so crawls can be tested and benchmarked without touching the live sites.
+ *
+ *   GET /page?url=<the original URL>                 the saved HTML of that URL, or 404
+ *
+ * Pages are saved by recording(), as <hash of the URL>-<n>.html. A URL with several saves (e.g. Wikipedia's random
+ * page) gets them served in turn. An optional delay per request stands in for network latency.
+ */
+public class CrawlStub {
+    private final HttpServer server;
+    private final Map<String, List<Path>> pages = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> nextPage = new ConcurrentHashMap<>();
+    private final long delayMillis;
+
+    /**
+     * @param directory                the saved pages
+     * @param port                     the port to serve on
+     * @param delayMillis              how long each request waits before it is answered
+     */
+    public CrawlStub(Path directory, int port, long delayMillis) throws IOException {
+        this.delayMillis = delayMillis;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.html")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                pages.computeIfAbsent(name.substring(0, name.indexOf('-')), key -> new ArrayList<>()).add(file);
+            }
+        }
+        pages.values().forEach(list -> list.sort(null));
+
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/page", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        String url = query == null || !query.startsWith("url=")
+                ? ""
+                : URLDecoder.decode(query.substring("url=".length()), StandardCharsets.UTF_8);
+        List<Path> saved = pages.get(keyOf(url));
+
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        byte[] body;
+        int status;
+        if (saved == null) {
+            body = ("No saved page for " + url + "\n").getBytes(StandardCharsets.UTF_8);
+            status = 404;
+        }
+        else {
+            int index = nextPage.computeIfAbsent(url, key -> new AtomicInteger()).getAndIncrement();
+            body = Files.readAllBytes(saved.get(Math.floorMod(index, saved.size())));
+            status = 200;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    /**
+     * @param baseUrl                  where the stub is, e.g. http://127.0.0.1:8081
+     * @return                         a fetcher that asks the stub for every URL instead of the live site
+     */
+    public static PageFetcher fetcher(String baseUrl) {
+        return url -> Jsoup.connect(baseUrl + "/page?url=" + URLEncoder.encode(url, StandardCharsets.UTF_8))
+                .execute()
+                .body();
+    }
+
+    /**
+     * Wraps a fetcher so that every page it gets is also saved for the stub to serve later
+     *
+     * @param fetcher                  the fetcher to record
+     * @param directory                where to save the pages
+     * @return                         the recording fetcher
+     */
+    public static PageFetcher recording(PageFetcher fetcher, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        AtomicInteger saves = new AtomicInteger();
+        return url -> {
+            String html = fetcher.fetch(url);
+            Files.write(directory.resolve(keyOf(url) + "-" + saves.getAndIncrement() + ".html"), html.getBytes(StandardCharsets.UTF_8));
+            return html;
+        };
+    }
+
+    private static String keyOf(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                name.append(String.format("%02x", digest[i]));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Arguments: the directory of saved pages, the port and the delay per request in milliseconds
+     */
+    public static void main(String[] args) {
+        Path directory = Paths.get(args.length > 0 ? args[0] : "./saved-pages");
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8081;
+        long delayMillis = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        try {
+            CrawlStub stub = new CrawlStub(directory, port, delayMillis);
+            stub.start();
+            System.out.println("Serving saved pages from " + directory + " on http://127.0.0.1:" + stub.port());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,416 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Searches for the best anagrams of a name across several worker processes (see SearchWorker). The top-level loop of
+ * anagramHelper splits the search into independent branches, one per word of the name's filtered signature dict; the
+ * coordinator hands out ranges of those branches, and the workers stream back the anagrams that make their top K,
+ * which are merged into one TopAnagrams.
+ *
+ * The early branches start with the best words and hold most of the work, so even ranges would leave most workers
+ * idle. Instead, once the ranges run out, an idle worker's next range is the unstarted half of a busy worker's one.
+ * The best K-th score so far goes out with every range, and to every worker whenever it goes up, so all of them prune
+ * against it.
+ */
+public class DistributedSearch implements Closeable {
+    // the branches are cut into this many ranges per worker to begin with
+    private static final int INITIAL_RANGES_PER_WORKER = 2;
+    // starting a JVM and loading the dictionary takes a while
+    private static final int CONNECT_TIMEOUT_MILLIS = 120_000;
+
+    private final AnagramMe anagrammer;
+    private final ServerSocket serverSocket;
+    private final List<Process> processes;
+    private final List<Worker> workers = new ArrayList<>();
+    // everything the workers say except their anagrams, which go straight into the query's collector
+    private final BlockingQueue<Message> messages = new LinkedBlockingQueue<>();
+    // the query in progress; the workers' reader threads offer its anagrams into its collector
+    private volatile Query query = new Query(0, null);
+    private long sequence = 0;
+
+    /**
+     * Starts worker processes on this host that load the anagrammer's own dictionary file; see launch(AnagramMe,
+     * String, int)
+     *
+     * @param anagrammer               the anagrammer whose dictionary the workers load
+     * @param workerCount              the number of worker processes
+     * @return                         the coordinator; close it to stop the workers
+     */
+    public static DistributedSearch launch(AnagramMe anagrammer, int workerCount) throws IOException {
+        return launch(anagrammer, anagrammer.dictPath, workerCount);
+    }
+
+    /**
+     * Starts worker processes on this host, with the same java and classpath as ours, and waits for them to connect.
+     * The workers need a file holding the anagrammer's dictionary; a merged profile has none of its own, so write it
+     * out with MergedDictionary.writeProfile first and pass that.
+     *
+     * @param anagrammer               the anagrammer whose dictionary the workers load
+     * @param dictionaryFile           a text or binary dictionary file holding the same words as the anagrammer
+     * @param workerCount              the number of worker processes
+     * @return                         the coordinator; close it to stop the workers
+     */
+    public static DistributedSearch launch(AnagramMe anagrammer, String dictionaryFile, int workerCount) throws IOException {
+        // a worker that cannot load it would only show up as the connect timeout, minutes later
+        Path dictionary = Paths.get(dictionaryFile);
+        if (!Files.isRegularFile(dictionary) || !Files.isReadable(dictionary)) {
+            throw new IllegalArgumentException("Workers cannot load " + dictionaryFile
+                    + "; pass a dictionary file, e.g. one written by MergedDictionary.writeProfile");
+        }
+        ServerSocket serverSocket = new ServerSocket(0, workerCount, InetAddress.getLoopbackAddress());
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> processes = new ArrayList<>();
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                processes.add(new ProcessBuilder(
+                        java, "-cp", System.getProperty("java.class.path"), "SearchWorker",
+                        serverSocket.getInetAddress().getHostAddress(), String.valueOf(serverSocket.getLocalPort()),
+                        dictionaryFile
+                ).redirectOutput(ProcessBuilder.Redirect.DISCARD).redirectError(ProcessBuilder.Redirect.INHERIT).start());
+            }
+            return new DistributedSearch(anagrammer, serverSocket, workerCount, processes);
+        } catch (IOException e) {
+            for (Process process : processes) {
+                process.destroy();
+            }
+            serverSocket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for workers started elsewhere (java SearchWorker host port dictPath) to connect
+     *
+     * @param anagrammer               the anagrammer whose dictionary the workers load
+     * @param serverSocket             the socket the workers connect to
+     * @param workerCount              the number of workers to wait for
+     */
+    public DistributedSearch(AnagramMe anagrammer, ServerSocket serverSocket, int workerCount) throws IOException {
+        this(anagrammer, serverSocket, workerCount, new ArrayList<>());
+    }
+
+    private DistributedSearch(AnagramMe anagrammer, ServerSocket serverSocket, int workerCount, List<Process> processes)
+            throws IOException {
+        this.anagrammer = anagrammer;
+        this.serverSocket = serverSocket;
+        this.processes = processes;
+
+        serverSocket.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+        try {
+            while (workers.size() < workerCount) {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Worker worker = new Worker(socket);
+                workers.add(worker);
+                worker.start();
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the best anagrams of a name, searched by all the workers
+     *
+     * @param name             the name to anagram
+     * @param count            the number of anagrams to keep
+     * @return                 the collector holding the best anagrams
+     */
+    public synchronized TopAnagrams findTopAnagrams(String name, int count) throws IOException {
+        long start = System.nanoTime();
+        TopAnagrams topAnagrams = new TopAnagrams(count, anagrammer.getScorer());
+        topAnagrams.metrics = anagrammer.metrics;
+        // a query that failed may have left workers busy and lines on their way; those carry its number and are dropped
+        Query query = new Query(this.query.number + 1, topAnagrams);
+        this.query = query;
+        messages.clear();
+
+        for (Worker worker : workers) {
+            worker.busy = false;
+            worker.splitting = false;
+            worker.splittable = false;
+            worker.send("QUERY\t" + query.number + "\t" + count + "\t" + anagrammer.getScorer().name() + "\t" + name);
+            worker.flush();
+        }
+        int branches = -1;
+        for (int ready = 0; ready < workers.size(); ready++) {
+            Message message = nextMessage("READY");
+            if (branches != -1 && message.intAt(2) != branches) {
+                throw new IOException("Workers disagree on the branches of " + name + "; are they on the same dict?");
+            }
+            branches = message.intAt(2);
+        }
+
+        Deque<int[]> ranges = new ArrayDeque<>();
+        int rangeCount = Math.min(branches, workers.size() * INITIAL_RANGES_PER_WORKER);
+        for (int i = 0; i < rangeCount; i++) {
+            ranges.add(new int[]{(int) ((long) branches * i / rangeCount), (int) ((long) branches * (i + 1) / rangeCount)});
+        }
+
+        double sentThreshold = Double.NEGATIVE_INFINITY;
+        while (true) {
+            // hand out the ranges we have, then take work off busy workers for the idle ones
+            int idle = 0;
+            for (Worker worker : workers) {
+                if (!worker.busy && !ranges.isEmpty()) {
+                    int[] range = ranges.poll();
+                    worker.busy = true;
+                    worker.splittable = true;
+                    worker.send("RANGE\t" + query.number + "\t" + range[0] + "\t" + range[1] + "\t" + threshold());
+                }
+                idle += worker.busy ? 0 : 1;
+            }
+            for (Worker worker : workers) {
+                if (worker.splitting) {
+                    idle--;
+                }
+            }
+            for (Worker worker : workers) {
+                if (idle <= 0) {
+                    break;
+                }
+                if (worker.busy && worker.splittable && !worker.splitting) {
+                    worker.splitting = true;
+                    worker.send("SPLIT\t" + query.number);
+                    idle--;
+                }
+            }
+
+            boolean working = false;
+            for (Worker worker : workers) {
+                working |= worker.busy || worker.splitting;
+                worker.flush();
+            }
+            if (!working) {
+                break;
+            }
+
+            Message message = nextMessage(null);
+            Worker worker = message.worker;
+            switch (message.fields[0]) {
+                case "DONE":
+                    worker.busy = false;
+                    synchronized (topAnagrams) {
+                        topAnagrams.getStats().nodesVisited += Long.parseLong(message.fields[2]);
+                        topAnagrams.getStats().solutions += Long.parseLong(message.fields[3]);
+                    }
+                    break;
+                case "SPLIT":
+                    worker.splitting = false;
+                    if (message.intAt(2) < message.intAt(3)) {
+                        ranges.add(new int[]{message.intAt(2), message.intAt(3)});
+                    }
+                    else {
+                        // it is on the last branch of its range; it can be split again once it has a new one
+                        worker.splittable = false;
+                    }
+                    break;
+                default:
+                    throw new IOException("Unexpected message: " + String.join("\t", message.fields));
+            }
+
+            double threshold = threshold();
+            if (threshold > sentThreshold) {
+                for (Worker busyWorker : workers) {
+                    if (busyWorker.busy) {
+                        busyWorker.send("THRESHOLD\t" + query.number + "\t" + threshold);
+                    }
+                }
+                sentThreshold = threshold;
+            }
+        }
+
+        topAnagrams.getStats().searchNanos = System.nanoTime() - start;
+        anagrammer.metrics.record(topAnagrams.getStats());
+        return topAnagrams;
+    }
+
+    private double threshold() {
+        TopAnagrams topAnagrams = query.topAnagrams;
+        synchronized (topAnagrams) {
+            return topAnagrams.threshold();
+        }
+    }
+
+    /**
+     * Waits for the next message from a worker about the query in progress
+     *
+     * @param expected         the kind of message we can take, or null for any
+     */
+    private Message nextMessage(String expected) throws IOException {
+        Message message;
+        do {
+            try {
+                message = messages.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the workers", e);
+            }
+        } while (message.failure == null && !query.isOf(message.fields));
+        if (message.failure != null) {
+            throw new IOException("A worker failed", message.failure);
+        }
+        if (expected != null && !message.fields[0].equals(expected)) {
+            throw new IOException("Expected " + expected + ", got: " + String.join("\t", message.fields));
+        }
+        return message;
+    }
+
+    /**
+     * Stops the workers; the ones we started are waited for
+     */
+    @Override
+    public void close() throws IOException {
+        for (Worker worker : workers) {
+            try {
+                worker.send("QUIT");
+                worker.flush();
+                worker.socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        for (Process process : processes) {
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+        serverSocket.close();
+    }
+
+    /**
+     * A query's number, which every line about it carries right after its kind, and its collector
+     */
+    private static class Query {
+        final long number;
+        final TopAnagrams topAnagrams;
+
+        Query(long number, TopAnagrams topAnagrams) {
+            this.number = number;
+            this.topAnagrams = topAnagrams;
+        }
+
+        boolean isOf(String[] fields) {
+            return fields.length > 1 && fields[1].equals(String.valueOf(number));
+        }
+    }
+
+    /**
+     * A line from a worker, split into its fields, or the reason the worker stopped talking
+     */
+    private static class Message {
+        final Worker worker;
+        final String[] fields;
+        final IOException failure;
+
+        Message(Worker worker, String[] fields, IOException failure) {
+            this.worker = worker;
+            this.fields = fields;
+            this.failure = failure;
+        }
+
+        int intAt(int index) {
+            return Integer.parseInt(fields[index]);
+        }
+    }
+
+    /**
+     * One connected worker: what the query loop knows about it, and the thread reading what it says
+     */
+    private class Worker extends Thread {
+        final Socket socket;
+        final BufferedWriter writer;
+        // only touched by the query loop
+        boolean busy = false;
+        boolean splitting = false;
+        boolean splittable = false;
+
+        Worker(Socket socket) throws IOException {
+            this.socket = socket;
+            this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            setName("search-worker-" + socket.getPort());
+            setDaemon(true);
+        }
+
+        void send(String line) throws IOException {
+            writer.write(line);
+            writer.write('\n');
+        }
+
+        void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void run() {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+                String nextLine;
+                while ((nextLine = reader.readLine()) != null) {
+                    String[] fields = nextLine.split("\t");
+                    if (fields[0].equals("ANAGRAM")) {
+                        offer(fields);
+                    }
+                    else {
+                        messages.add(new Message(this, fields, null));
+                    }
+                }
+                messages.add(new Message(this, null, new IOException("Worker hung up")));
+            } catch (IOException e) {
+                messages.add(new Message(this, null, e));
+            }
+        }
+
+        private void offer(String[] fields) {
+            Query current = query;
+            if (!current.isOf(fields)) {
+                return;
+            }
+            String[] ids = fields[3].split(",");
+            int[] wordIds = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                wordIds[i] = Integer.parseInt(ids[i]);
+            }
+            TopAnagrams collector = current.topAnagrams;
+            synchronized (collector) {
+                collector.offer(new ScoredAnagram(wordIds, anagrammer.dict, Double.parseDouble(fields[2]), sequence++));
+            }
+        }
+    }
+
+    /**
+     * Arguments: the number of workers (defaults to the number of processors), the name and the number of anagrams
+     */
+    public static void main(String[] args) throws IOException {
+        int workerCount = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        String name = args.length > 1 ? args[1] : "Elliot Bayes Potter";
+        int count = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+        AnagramMe anagrammer = new AnagramMe("./log-words.txt");
+        try (DistributedSearch search = DistributedSearch.launch(anagrammer, workerCount)) {
+            TopAnagrams topAnagrams = search.findTopAnagrams(name, count);
+            System.out.println(topAnagrams.toSortedList());
+            System.out.println(topAnagrams.getStats().toJson());
+        }
+    }
+}
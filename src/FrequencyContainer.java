@@ -1,4 +1,8 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A wrapper class to contain frequency information
@@ -7,10 +11,26 @@ import java.util.List;
 public class FrequencyContainer {
     public int frequency;
     public String word;
+    // the position of the word in its AnagramMe's sorted dict, or -1 outside of one
+    public int id = -1;
+    // the letter counts of the word, precomputed so the search never has to walk the word's characters
+    public FrequencyMap letters;
+    // which letters the word uses and how long it is, so most words can be rejected without looking at the counts
+    public int letterMask;
+    public int length;
+    // other words spelled with exactly the same letters, best first; only filled in on the best word of the group
+    public List<FrequencyContainer> sameLetters = new ArrayList<>(0);
 
     public FrequencyContainer(int frequency, String word) {
+        this(frequency, word, FrequencyMap.of(word));
+    }
+
+    public FrequencyContainer(int frequency, String word, FrequencyMap letters) {
         this.frequency = frequency;
         this.word = word;
+        this.letters = letters;
+        this.letterMask = letters.mask();
+        this.length = word.length();
     }
 
     /**
@@ -26,6 +46,42 @@ public class FrequencyContainer {
         return sum;
     }
 
+    /**
+     * Gets the sorted letters of a word, which every anagram of the word shares
+     *
+     * @param word                       the word
+     * @return                           the signature of the word
+     */
+    public static String signature(String word) {
+        char[] characters = word.toCharArray();
+        Arrays.sort(characters);
+        return new String(characters);
+    }
+
+    /**
+     * Groups words with identical letters behind the best word of each group
+     *
+     * @param sortedContainers           the containers, sorted with largest score first
+     * @return                           the best word of each group, still sorted with largest score first
+     */
+    public static List<FrequencyContainer> groupBySignature(List<FrequencyContainer> sortedContainers) {
+        Map<String, FrequencyContainer> groups = new HashMap<>();
+        List<FrequencyContainer> representatives = new ArrayList<>();
+
+        for (FrequencyContainer container : sortedContainers) {
+            // the first word we see with a signature is the best one, so it stands for the group
+            FrequencyContainer representative = groups.putIfAbsent(signature(container.word), container);
+            if (representative == null) {
+                representatives.add(container);
+            }
+            else {
+                representative.sameLetters.add(container);
+            }
+        }
+
+        return representatives;
+    }
+
     @Override
     public String toString() {
         return word + ":" + frequency;
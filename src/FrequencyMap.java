@@ -1,21 +1,94 @@
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
- * A wrapper class that allows for an unusual size implementation (records all characters in string, not just unique
- * characters)
+ * A letter-count vector that allows for an unusual size implementation (records all characters in string, not just
+ * unique characters). Counts live in a dense primitive array, so checking and subtracting a word never boxes or
+ * allocates.
  */
 public class FrequencyMap {
-    private Map<Character, Integer> backingMap = new HashMap<>();
-    private Integer size = 0;
+    // a-z take the first 26 slots, and the other characters dictionary words use (e.g. an apostrophe) get the spare
+    // slots after them on first use. A name can hold characters no word has; those all go in the last slot, which no
+    // word ever gets, so they never fit and cannot be confused with a character a word does have
+    static final int ALPHABET_SIZE = 32;
+    static final int NEVER_FITS = ALPHABET_SIZE - 1;
+    private static final char[] extraCharacters = new char[NEVER_FITS - 26];
+    // written under the class lock, after the character it counts
+    private static volatile int extraCharacterCount = 0;
 
-    public FrequencyMap() {
+    private final int[] counts;
+    private int size = 0;
+    // bit i is set while slot i has a count above zero
+    private int mask = 0;
 
+    public FrequencyMap() {
+        this.counts = new int[ALPHABET_SIZE];
     }
 
-    public FrequencyMap(Map<Character, Integer> backingMap, Integer size) {
-        this.backingMap = backingMap;
+    private FrequencyMap(int[] counts, int size, int mask) {
+        this.counts = counts;
         this.size = size;
+        this.mask = mask;
+    }
+
+    /**
+     * Builds the letter counts of a dictionary word, giving any character outside a-z a slot of its own
+     *
+     * @param word             the word to count
+     * @return                 the counts of each character in the word
+     * @throws IllegalStateException if the dictionaries use more characters outside a-z than there are slots
+     */
+    public static FrequencyMap of(String word) {
+        FrequencyMap frequencyMap = new FrequencyMap();
+        for (int i = 0; i < word.length(); i++) {
+            char character = word.charAt(i);
+            frequencyMap.incrementAt(character >= 'a' && character <= 'z' ? character - 'a' : register(character));
+        }
+        return frequencyMap;
+    }
+
+    /**
+     * Maps a character to its dense slot in the count array. Characters outside a-z that no dictionary word has
+     * map to NEVER_FITS.
+     *
+     * @param character        the character to look up
+     * @return                 the slot of the character
+     */
+    static int indexOf(char character) {
+        if (character >= 'a' && character <= 'z') {
+            return character - 'a';
+        }
+        int count = extraCharacterCount;
+        for (int i = 0; i < count; i++) {
+            if (extraCharacters[i] == character) {
+                return 26 + i;
+            }
+        }
+        return NEVER_FITS;
+    }
+
+    /**
+     * Gives a character of a dictionary word a slot, if it does not have one yet
+     */
+    private static synchronized int register(char character) {
+        int index = indexOf(character);
+        if (index != NEVER_FITS) {
+            return index;
+        }
+        if (extraCharacterCount == extraCharacters.length) {
+            throw new IllegalStateException("The dictionaries use more than " + extraCharacters.length
+                    + " characters besides a-z (" + new String(extraCharacters) + "), and '" + character + "' has no slot left");
+        }
+        int slot = extraCharacterCount;
+        extraCharacters[slot] = character;
+        extraCharacterCount = slot + 1;
+        return 26 + slot;
+    }
+
+    private static char characterAt(int index) {
+        if (index < 26) {
+            return (char) ('a' + index);
+        }
+        return index < NEVER_FITS ? extraCharacters[index - 26] : '?';
     }
 
     /**
@@ -24,66 +97,191 @@ public class FrequencyMap {
      * @param character
      * @param integer
      */
-    public void put(Character character, Integer integer) {
-        int previousInteger = 0;
-        if (backingMap.containsKey(character)) {
-            previousInteger = backingMap.get(character);
-        }
-
-        int difference = integer - previousInteger;
-        size += difference;
-        backingMap.put(character, integer);
+    public void put(char character, int integer) {
+        int index = indexOf(character);
+        size += integer - counts[index];
+        counts[index] = integer;
+        mask = integer > 0 ? mask | (1 << index) : mask & ~(1 << index);
     }
 
     /**
-     * Increases the value of the backingMap by 1
+     * Increases the count of a character by 1. This is how names are counted: a character no dictionary word has goes
+     * in the NEVER_FITS slot.
      *
      * @param character
      */
-    public void increment(Character character) {
-        if (!backingMap.containsKey(character)) {
-            backingMap.put(character, 0);
-        }
-        backingMap.put(character, backingMap.get(character)+1);
+    public void increment(char character) {
+        int index = indexOf(character);
+        counts[index]++;
         size++;
+        mask |= 1 << index;
     }
 
     /**
-     * Decreases the value of the backingMap by 1, or deletes the entry if underflow
+     * Decreases the count of a character by 1
      *
      * @param character
      */
-    public void decrement(Character character) {
-        // this will throw an NPE if character is not in the map. This is desirable
-        int count = backingMap.get(character);
-        count--;
-        if (count <= 0) {
-            backingMap.remove(character);
+    public void decrement(char character) {
+        int index = indexOf(character);
+        // this will throw if character is not in the map. This is desirable
+        if (counts[index] <= 0) {
+            throw new IllegalStateException("No '" + character + "' left to remove");
         }
-        else {
-            backingMap.put(character, count);
+        if (--counts[index] == 0) {
+            mask &= ~(1 << index);
         }
         size--;
     }
 
+    /**
+     * @param index            a slot, as indexOf gives it
+     * @return                 the count in that slot
+     */
+    int countAt(int index) {
+        return counts[index];
+    }
+
+    /**
+     * Takes one from a slot; the caller must check countAt first. Used by SignatureTrie, which walks letters by slot.
+     *
+     * @param index            the slot to take from
+     */
+    void decrementAt(int index) {
+        if (--counts[index] == 0) {
+            mask &= ~(1 << index);
+        }
+        size--;
+    }
+
+    /**
+     * Puts one back in a slot. This undoes decrementAt().
+     *
+     * @param index            the slot to add to
+     */
+    void incrementAt(int index) {
+        counts[index]++;
+        size++;
+        mask |= 1 << index;
+    }
+
+    /**
+     * Checks whether every letter of another map is available in this one
+     *
+     * @param letters          the letters we want to take (usually a word)
+     * @return                 true if the letters fit in this map
+     */
+    public boolean contains(FrequencyMap letters) {
+        // a single AND rejects letters we have none of at all
+        if (letters.size > size || (letters.mask & ~mask) != 0) {
+            return false;
+        }
+        int[] otherCounts = letters.counts;
+        for (int i = 0; i < ALPHABET_SIZE; i++) {
+            if (otherCounts[i] > counts[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the letters of another map from this one, in place. The caller must check contains() first.
+     *
+     * @param letters          the letters to remove
+     */
+    public void subtract(FrequencyMap letters) {
+        int[] otherCounts = letters.counts;
+        for (int i = 0; i < ALPHABET_SIZE; i++) {
+            if ((counts[i] -= otherCounts[i]) == 0) {
+                mask &= ~(1 << i);
+            }
+        }
+        size -= letters.size;
+    }
+
+    /**
+     * Adds the letters of another map to this one, in place. This undoes subtract().
+     *
+     * @param letters          the letters to add back
+     */
+    public void add(FrequencyMap letters) {
+        int[] otherCounts = letters.counts;
+        for (int i = 0; i < ALPHABET_SIZE; i++) {
+            counts[i] += otherCounts[i];
+        }
+        size += letters.size;
+        mask |= letters.mask;
+    }
+
+    /**
+     * Raises every count of this map to at least the count in another, in place. Anything that fits in either map
+     * then fits in this one.
+     *
+     * @param letters          the letters to take the union with
+     */
+    public void union(FrequencyMap letters) {
+        int[] otherCounts = letters.counts;
+        for (int i = 0; i < ALPHABET_SIZE; i++) {
+            if (otherCounts[i] > counts[i]) {
+                size += otherCounts[i] - counts[i];
+                counts[i] = otherCounts[i];
+            }
+        }
+        mask |= letters.mask;
+    }
+
     /**
      * Makes a copy of the FrequencyMap
      * @return                  the copied FrequencyMap
      */
     public FrequencyMap copy() {
-        return new FrequencyMap(new HashMap<>(backingMap), size);
+        return new FrequencyMap(counts.clone(), size, mask);
+    }
+
+    public boolean contains(char character) {
+        return counts[indexOf(character)] > 0;
     }
 
-    public boolean contains(Character character) {
-        return backingMap.containsKey(character);
+    public int get(char character) {
+        return counts[indexOf(character)];
     }
 
     public int size() {
         return size;
     }
 
+    /**
+     * @return                  a bitmask of the slots (see indexOf) that have a count above zero
+     */
+    public int mask() {
+        return mask;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof FrequencyMap)) {
+            return false;
+        }
+        FrequencyMap frequencyMap = (FrequencyMap) other;
+        return size == frequencyMap.size && mask == frequencyMap.mask && Arrays.equals(counts, frequencyMap.counts);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(counts);
+    }
+
     @Override
     public String toString() {
-        return "{size: " + size + ", map: " + backingMap.toString() + "}";
+        StringBuilder builder = new StringBuilder("{size: " + size + ", map: {");
+        boolean first = true;
+        for (int i = 0; i < ALPHABET_SIZE; i++) {
+            if (counts[i] > 0) {
+                builder.append(first ? "" : ", ").append(characterAt(i)).append('=').append(counts[i]);
+                first = false;
+            }
+        }
+        return builder.append("}}").toString();
     }
 }
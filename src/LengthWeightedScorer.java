@@ -0,0 +1,49 @@
+/**
+ * Averages word frequencies per letter: each word counts as many times as it has letters. A long common word then
+ * outweighs a string of short filler words without any explicit penalty on the word count.
+ */
+public class LengthWeightedScorer implements Scorer {
+    private long weightedSum = 0;
+    private int letters = 0;
+
+    @Override
+    public void push(FrequencyContainer word) {
+        weightedSum += (long) word.frequency * word.length;
+        letters += word.length;
+    }
+
+    @Override
+    public void pop(FrequencyContainer word) {
+        weightedSum -= (long) word.frequency * word.length;
+        letters -= word.length;
+    }
+
+    @Override
+    public double score() {
+        return letters == 0 ? 0 : (double) weightedSum / letters;
+    }
+
+    @Override
+    public double upperBound(int remainingLetters, int minWordLength, int maxFrequency) {
+        // the letters are spoken for, so at best every one of them goes to a word of maxFrequency
+        return (weightedSum + (double) remainingLetters * maxFrequency) / (letters + remainingLetters);
+    }
+
+    @Override
+    public Scorer empty() {
+        return new LengthWeightedScorer();
+    }
+
+    @Override
+    public Scorer copy() {
+        LengthWeightedScorer copy = new LengthWeightedScorer();
+        copy.weightedSum = weightedSum;
+        copy.letters = letters;
+        return copy;
+    }
+
+    @Override
+    public String name() {
+        return "length";
+    }
+}
@@ -1,22 +1,44 @@
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Builds log-words.txt from the Urban Dictionary and Wikipedia word counts.
+ *
+ * A score is log(urban / urbanTotal * wikipediaTotal / wikipedia), or without the wikipedia count for words Wikipedia
+ * never had. Everything but the totals is per word, so we keep a state file with each word's counts and its
+ * "base" score log(urban) - log(wikipedia), sorted best first. When the totals move, every score moves by the same
+ * log(wikipediaTotal / urbanTotal), which leaves the order alone; only words whose counts changed need a new base.
+ *
+ * State file: a "#totals<TAB>urbanTotal<TAB>wikipediaTotal" line, then one "word<TAB>urban<TAB>wikipedia<TAB>base"
+ * line per word, by base descending and then by word. Words only Wikipedia has are kept (with a base of -Infinity,
+ * at the end) in case Urban Dictionary picks them up later.
+ */
 public class LogTableConstructor {
-    public static int loadTable(String path, Map<String, Integer> map) throws IOException {
-        BufferedReader reader  = new BufferedReader(new FileReader(path));
-        int sum = 0;
+    public static final String STATE_EXTENSION = ".state";
+    private static final String TOTALS_PREFIX = "#totals\t";
 
-        String nextLine;
-        while ((nextLine = reader.readLine()) != null) {
-            String[] splitLine = nextLine.split(":");
-            map.put(splitLine[0], Integer.parseInt(splitLine[1]));
-            sum += Integer.parseInt(splitLine[1]);
+    public static long loadTable(String path, Map<String, Long> map) throws IOException {
+        long sum = 0;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            String nextLine;
+            while ((nextLine = reader.readLine()) != null) {
+                int separator = nextLine.lastIndexOf(':');
+                if (separator <= 0) {
+                    continue;
+                }
+                long count = Long.parseLong(nextLine.substring(separator + 1).trim());
+                map.merge(nextLine.substring(0, separator), count, Long::sum);
+                sum += count;
+            }
         }
-
-        reader.close();
         return sum;
     }
 
@@ -32,85 +54,311 @@ public class LogTableConstructor {
      */
     public static double computeScore(
             String word,
-            int frequency,
-            int urbanWordsCount,
-            Map<String, Integer> wikipediaWordsMap,
-            int wikipediaWordsCount
+            long frequency,
+            long urbanWordsCount,
+            Map<String, Long> wikipediaWordsMap,
+            long wikipediaWordsCount
     ) {
-        if (!wikipediaWordsMap.containsKey(word)) {
-            return Math.log(((double) frequency) / urbanWordsCount * wikipediaWordsCount);
-        } else {
-            int countInWikipedia = wikipediaWordsMap.get(word);
-
-            if (word.equals("fuck")) {
-                System.out.println((((double) frequency) / urbanWordsCount));
-                System.out.println(((double) countInWikipedia) / wikipediaWordsCount);
-            }
+        Long countInWikipedia = wikipediaWordsMap.get(word);
+        return computeBase(frequency, countInWikipedia == null ? 0 : countInWikipedia)
+                + offset(urbanWordsCount, wikipediaWordsCount);
+    }
 
-            // we strongly discount the value if it appears in Wikipedia
-            return Math.log(
-                    (((double) frequency) / urbanWordsCount)
-                    / (((double) countInWikipedia) / wikipediaWordsCount)
-            );
+    /**
+     * The part of the score that only depends on the word's own counts
+     *
+     * @param urbanCount                  the count of the word on Urban Dictionary
+     * @param wikipediaCount              the count of the word on Wikipedia, 0 if it never showed up there
+     * @return                            the base score, -Infinity for words Urban Dictionary doesn't have
+     */
+    static double computeBase(long urbanCount, long wikipediaCount) {
+        if (urbanCount <= 0) {
+            return Double.NEGATIVE_INFINITY;
         }
+        // we strongly discount the value if it appears in Wikipedia
+        return wikipediaCount > 0 ? Math.log(urbanCount) - Math.log(wikipediaCount) : Math.log(urbanCount);
+    }
+
+    /**
+     * The part of the score every word shares
+     */
+    static double offset(long urbanWordsCount, long wikipediaWordsCount) {
+        return Math.log(wikipediaWordsCount) - Math.log(urbanWordsCount);
     }
 
     public static int makeLogToInteger(double log) {
         return (int) (1000000 * log);
     }
 
+    /**
+     * One line of the state file
+     */
+    private static class Entry {
+        final String word;
+        long urbanCount;
+        long wikipediaCount;
+        double base;
+
+        Entry(String word, long urbanCount, long wikipediaCount) {
+            this(word, urbanCount, wikipediaCount, computeBase(urbanCount, wikipediaCount));
+        }
+
+        private Entry(String word, long urbanCount, long wikipediaCount, double base) {
+            this.word = word;
+            this.urbanCount = urbanCount;
+            this.wikipediaCount = wikipediaCount;
+            this.base = base;
+        }
+
+        static Entry parse(String line) {
+            String[] splitLine = line.split("\t");
+            // the stored base saves us the logs; it is what computeBase gave for these counts
+            return new Entry(splitLine[0], Long.parseLong(splitLine[1]), Long.parseLong(splitLine[2]), Double.parseDouble(splitLine[3]));
+        }
+
+        /**
+         * Best base first, ties by word, so the state file has one order however it was built
+         */
+        static int compare(Entry entry1, Entry entry2) {
+            int byBase = Double.compare(entry2.base, entry1.base);
+            return byBase != 0 ? byBase : entry1.word.compareTo(entry2.word);
+        }
+
+        void write(Writer writer) throws IOException {
+            writer.write(word + "\t" + urbanCount + "\t" + wikipediaCount + "\t" + base + "\n");
+        }
+    }
+
+    /**
+     * Rebuilds the log table from the full word counts, replacing log-words.txt and its state file
+     */
     public static void constructLogTable(
             String urbanWordsPath,
             String wikipediaWordsPath,
             String outputWordsPath
     ) {
-        Map<String, Integer> urbanWordsMap = new HashMap<>();
-        Map<String, Integer> wikipediaWordsMap = new HashMap<>();
-        int urbanWordsCount = 0;
-        int wikipediaWordsCount = 0;
-
         try {
-            urbanWordsCount = loadTable(urbanWordsPath, urbanWordsMap);
-            wikipediaWordsCount = loadTable(wikipediaWordsPath, wikipediaWordsMap);
-        } catch (Exception e) {
+            rebuild(urbanWordsPath, wikipediaWordsPath, outputWordsPath + STATE_EXTENSION, outputWordsPath);
+        } catch (IOException e) {
             e.printStackTrace();
         }
+    }
+
+    /**
+     * Builds the state file from the full word counts, and the dictionary from it
+     *
+     * @param urbanWordsPath              the Urban Dictionary word:count file
+     * @param wikipediaWordsPath          the Wikipedia word:count file
+     * @param statePath                   where to write the state file
+     * @param outputPath                  where to write the dictionary (binary if it ends in .bin), or null for none
+     */
+    public static void rebuild(String urbanWordsPath, String wikipediaWordsPath, String statePath, String outputPath)
+            throws IOException {
+        Map<String, Long> urbanWordsMap = new HashMap<>();
+        Map<String, Long> wikipediaWordsMap = new HashMap<>();
+        long urbanWordsCount = loadTable(urbanWordsPath, urbanWordsMap);
+        long wikipediaWordsCount = loadTable(wikipediaWordsPath, wikipediaWordsMap);
+
+        List<Entry> entries = new ArrayList<>(urbanWordsMap.size() + wikipediaWordsMap.size());
+        for (Map.Entry<String, Long> urbanEntry : urbanWordsMap.entrySet()) {
+            Long countInWikipedia = wikipediaWordsMap.get(urbanEntry.getKey());
+            entries.add(new Entry(urbanEntry.getKey(), urbanEntry.getValue(), countInWikipedia == null ? 0 : countInWikipedia));
+        }
+        for (Map.Entry<String, Long> wikipediaEntry : wikipediaWordsMap.entrySet()) {
+            if (!urbanWordsMap.containsKey(wikipediaEntry.getKey())) {
+                entries.add(new Entry(wikipediaEntry.getKey(), 0, wikipediaEntry.getValue()));
+            }
+        }
+        entries.sort(Entry::compare);
 
-        List<FrequencyContainer> adjUrbanWordList = new ArrayList<>();
+        try (TableOutput output = new TableOutput(statePath, outputPath, urbanWordsCount, wikipediaWordsCount)) {
+            for (Entry entry : entries) {
+                output.write(entry);
+            }
+            output.commit();
+        }
+    }
+
+    /**
+     * Merges delta counts into the state file and rewrites the dictionary. Only words named in a delta get a new base;
+     * the rest of the state is streamed through in order, with the changed words merged back in where they now go.
+     *
+     * @param statePath                   the state file to update in place
+     * @param urbanDeltaPath              the new Urban Dictionary word:count lines, or null
+     * @param wikipediaDeltaPath          the new Wikipedia word:count lines, or null
+     * @param outputPath                  where to write the dictionary (binary if it ends in .bin), or null for none
+     */
+    public static void update(String statePath, String urbanDeltaPath, String wikipediaDeltaPath, String outputPath)
+            throws IOException {
+        Map<String, Long> urbanDeltas = new HashMap<>();
+        Map<String, Long> wikipediaDeltas = new HashMap<>();
+        long urbanDelta = urbanDeltaPath == null ? 0 : loadTable(urbanDeltaPath, urbanDeltas);
+        long wikipediaDelta = wikipediaDeltaPath == null ? 0 : loadTable(wikipediaDeltaPath, wikipediaDeltas);
+
+        // first pass: pull out the words the deltas touch and give them their new counts
+        Map<String, Entry> changed = new HashMap<>();
+        long urbanWordsCount;
+        long wikipediaWordsCount;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(statePath), StandardCharsets.UTF_8)) {
+            String[] totals = reader.readLine().substring(TOTALS_PREFIX.length()).split("\t");
+            urbanWordsCount = Long.parseLong(totals[0]) + urbanDelta;
+            wikipediaWordsCount = Long.parseLong(totals[1]) + wikipediaDelta;
 
-        // iterates over the urban words and computes their corresponding adjusted log representations
-        for (Map.Entry<String, Integer> urbanEntry : urbanWordsMap.entrySet()) {
-            adjUrbanWordList.add(new FrequencyContainer(
-                    // computes a log score and intifies it.
-                    makeLogToInteger(computeScore(
-                            urbanEntry.getKey(),
-                            urbanEntry.getValue(),
-                            urbanWordsCount,
-                            wikipediaWordsMap,
-                            wikipediaWordsCount
-                    )),
-                    urbanEntry.getKey()
-            ));
+            String nextLine;
+            while ((nextLine = reader.readLine()) != null) {
+                String word = nextLine.substring(0, nextLine.indexOf('\t'));
+                if (urbanDeltas.containsKey(word) || wikipediaDeltas.containsKey(word)) {
+                    changed.put(word, Entry.parse(nextLine));
+                }
+            }
+        }
+        for (Map.Entry<String, Long> delta : urbanDeltas.entrySet()) {
+            changed.computeIfAbsent(delta.getKey(), word -> new Entry(word, 0, 0)).urbanCount += delta.getValue();
         }
+        for (Map.Entry<String, Long> delta : wikipediaDeltas.entrySet()) {
+            changed.computeIfAbsent(delta.getKey(), word -> new Entry(word, 0, 0)).wikipediaCount += delta.getValue();
+        }
+        List<Entry> changedEntries = new ArrayList<>(changed.values());
+        for (Entry entry : changedEntries) {
+            entry.base = computeBase(entry.urbanCount, entry.wikipediaCount);
+        }
+        changedEntries.sort(Entry::compare);
 
-        // sorts the list to have the most frequent words first
-        adjUrbanWordList.sort((container1, container2) -> Integer.compare(container2.frequency, container1.frequency));
+        // second pass: the untouched lines are still in order, so we merge the changed ones into them as we go
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(statePath), StandardCharsets.UTF_8);
+             TableOutput output = new TableOutput(statePath, outputPath, urbanWordsCount, wikipediaWordsCount)) {
+            reader.readLine();
+            int next = 0;
+            String nextLine;
+            while ((nextLine = reader.readLine()) != null) {
+                if (changed.containsKey(nextLine.substring(0, nextLine.indexOf('\t')))) {
+                    continue;
+                }
+                Entry entry = Entry.parse(nextLine);
+                while (next < changedEntries.size() && Entry.compare(changedEntries.get(next), entry) < 0) {
+                    output.write(changedEntries.get(next++));
+                }
+                output.write(entry);
+            }
+            while (next < changedEntries.size()) {
+                output.write(changedEntries.get(next++));
+            }
+            output.commit();
+        }
+    }
 
+    /**
+     * Writes the state file and, from the same stream of entries, the dictionary: a word:score text file in score
+     * order, or a binary one if the path ends in .bin. Both are written to temporary files next to them and only moved
+     * into place by commit(), so a failed or interrupted run leaves the old ones as they were. The dictionary goes
+     * first: a new dictionary with the old state just means the same update can be run again.
+     */
+    private static class TableOutput implements Closeable {
+        private final Path statePath;
+        private final Path tempStatePath;
+        private final Writer stateWriter;
+        private final Path outputPath;
+        private final Path tempOutputPath;
+        private final Writer dictWriter;
+        private final BinaryDictionary.Writer binaryWriter;
+        private final double offset;
+        private boolean committed = false;
 
-        try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(outputWordsPath));
+        TableOutput(String statePath, String outputPath, long urbanWordsCount, long wikipediaWordsCount) throws IOException {
+            this.statePath = Paths.get(statePath);
+            this.tempStatePath = Paths.get(statePath + ".tmp");
+            this.stateWriter = Files.newBufferedWriter(tempStatePath, StandardCharsets.UTF_8);
+            this.outputPath = outputPath == null ? null : Paths.get(outputPath);
+            this.tempOutputPath = outputPath == null ? null : Paths.get(outputPath + ".tmp");
+            boolean binary = outputPath != null && outputPath.endsWith(BinaryDictionary.EXTENSION);
+            this.dictWriter = outputPath == null || binary
+                    ? null
+                    : Files.newBufferedWriter(tempOutputPath, StandardCharsets.UTF_8);
+            this.binaryWriter = binary ? new BinaryDictionary.Writer(tempOutputPath.toString()) : null;
+            this.offset = offset(urbanWordsCount, wikipediaWordsCount);
+            stateWriter.write(TOTALS_PREFIX + urbanWordsCount + "\t" + wikipediaWordsCount + "\n");
+        }
 
-            for (FrequencyContainer container : adjUrbanWordList) {
-                writer.write(container.word + ":" + container.frequency + "\n");
+        void write(Entry entry) throws IOException {
+            entry.write(stateWriter);
+            if (entry.urbanCount <= 0 || outputPath == null) {
+                return;
             }
 
-            writer.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+            // computes a log score and intifies it.
+            int score = makeLogToInteger(entry.base + offset);
+            if (dictWriter != null) {
+                dictWriter.write(entry.word + ":" + score + "\n");
+            }
+            // the binary format is read as is, so it gets the same filtering AnagramMe does on text
+            else if (entry.word.length() >= AnagramMe.WORD_LENGTH_THRESHOLD
+                    && entry.word.getBytes(StandardCharsets.UTF_8).length <= 0xFF) {
+                binaryWriter.add(entry.word, score);
+            }
+        }
+
+        /**
+         * Finishes both files and moves them into place
+         */
+        void commit() throws IOException {
+            closeWriters();
+            if (outputPath != null) {
+                Files.move(tempOutputPath, outputPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            Files.move(tempStatePath, statePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        private void closeWriters() throws IOException {
+            try {
+                stateWriter.close();
+            } finally {
+                if (dictWriter != null) {
+                    dictWriter.close();
+                }
+                if (binaryWriter != null) {
+                    binaryWriter.close();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (committed) {
+                return;
+            }
+            // something went wrong before commit, so the temporary files are all there is to clean up
+            try {
+                closeWriters();
+            } finally {
+                Files.deleteIfExists(tempStatePath);
+                if (tempOutputPath != null) {
+                    Files.deleteIfExists(tempOutputPath);
+                }
+            }
         }
     }
 
+    /**
+     * With no arguments, rebuilds log-words.txt from urban-words.txt and wikipedia-words.txt. With "update", merges
+     * delta files (urban, then wikipedia; - for none) into log-words.txt.state and writes the dictionary to the
+     * given path, log-words.txt by default.
+     */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("update")) {
+            String output = args.length > 3 ? args[3] : "./log-words.txt";
+            try {
+                update(
+                        "./log-words.txt" + STATE_EXTENSION,
+                        args.length > 1 && !args[1].equals("-") ? args[1] : null,
+                        args.length > 2 && !args[2].equals("-") ? args[2] : null,
+                        output
+                );
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
         constructLogTable("./urban-words.txt", "./wikipedia-words.txt", "./log-words.txt");
     }
 }
@@ -0,0 +1,56 @@
+import java.util.Arrays;
+
+/**
+ * Ranks an anagram by its best word, divided by the word count so that the rest of the anagram stays short. Good for
+ * finding the one great word a name can hide.
+ */
+public class MaxWordScorer implements Scorer {
+    // maxima[i] is the best frequency among the first i + 1 words, so popping is just moving back one
+    private int[] maxima = new int[8];
+    private int wordCount = 0;
+
+    @Override
+    public void push(FrequencyContainer word) {
+        if (wordCount == maxima.length) {
+            maxima = Arrays.copyOf(maxima, wordCount * 2);
+        }
+        maxima[wordCount] = wordCount == 0 ? word.frequency : Math.max(maxima[wordCount - 1], word.frequency);
+        wordCount++;
+    }
+
+    @Override
+    public void pop(FrequencyContainer word) {
+        wordCount--;
+    }
+
+    @Override
+    public double score() {
+        return wordCount == 0 ? 0 : (double) maxima[wordCount - 1] / wordCount;
+    }
+
+    @Override
+    public double upperBound(int remainingLetters, int minWordLength, int maxFrequency) {
+        int best = wordCount == 0 ? maxFrequency : Math.max(maxima[wordCount - 1], maxFrequency);
+        // one more word is the best case for a positive score, as many as fit for a negative one
+        int words = best >= 0 ? 1 : Math.max(1, remainingLetters / minWordLength);
+        return (double) best / (wordCount + words);
+    }
+
+    @Override
+    public Scorer empty() {
+        return new MaxWordScorer();
+    }
+
+    @Override
+    public Scorer copy() {
+        MaxWordScorer copy = new MaxWordScorer();
+        copy.maxima = maxima.clone();
+        copy.wordCount = wordCount;
+        return copy;
+    }
+
+    @Override
+    public String name() {
+        return "maxword";
+    }
+}
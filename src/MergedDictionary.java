@@ -0,0 +1,222 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Several dictionaries merged into one word table, e.g. log-words.txt for slang, words.txt for plain words (which
+ * have no scores, so every word scores 1) and wikipedia-words.txt. Each word is kept once, with its letters counted
+ * once and its score in every dictionary it is in.
+ *
+ * A weight profile scores every word as the weighted sum of its scores, where a word missing from a dictionary scores
+ * 0 there. Words only found in dictionaries a profile gives no weight are left out of it. Each profile is scored,
+ * sorted and grouped by signature once, when it is added, and becomes an AnagramMe of its own that queries can pick
+ * by name. The dictionaries are never read again.
+ */
+public class MergedDictionary {
+    // the names the dictionaries go by in weight profiles: their file names without the extension
+    private final List<String> sources = new ArrayList<>();
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, AnagramMe> profiles = new LinkedHashMap<>();
+
+    /**
+     * One word of the merged table
+     */
+    private static class Entry {
+        final String word;
+        // shared by the word's containers in every profile; nothing changes the letters of a container
+        final FrequencyMap letters;
+        final long[] scores;
+        // bit i is set if the word is in dictionary i
+        long presentIn = 0;
+
+        Entry(String word, FrequencyMap letters, int sourceCount) {
+            this.word = word;
+            this.letters = letters;
+            this.scores = new long[sourceCount];
+        }
+    }
+
+    /**
+     * Reads every dictionary in full
+     *
+     * @param paths                    the dictionaries, text (word:score, or just words) or binary
+     */
+    public MergedDictionary(String... paths) throws IOException {
+        this(Integer.MAX_VALUE, paths);
+    }
+
+    /**
+     * @param maxLines                 the number of lines to read of each text dictionary, like the 10,000 AnagramMe
+     *                                 reads; binary dictionaries are read in full
+     * @param paths                    the dictionaries, text (word:score, or just words) or binary
+     */
+    public MergedDictionary(int maxLines, String... paths) throws IOException {
+        if (paths.length > Long.SIZE) {
+            throw new IllegalArgumentException("At most " + Long.SIZE + " dictionaries can be merged, got " + paths.length);
+        }
+        Map<String, Entry> entriesByWord = new HashMap<>();
+        for (int source = 0; source < paths.length; source++) {
+            String fileName = Paths.get(paths[source]).getFileName().toString();
+            String name = fileName.contains(".") ? fileName.substring(0, fileName.lastIndexOf('.')) : fileName;
+            if (sources.contains(name)) {
+                throw new IllegalArgumentException("Two dictionaries are called " + name);
+            }
+            sources.add(name);
+
+            List<FrequencyContainer> words = paths[source].endsWith(BinaryDictionary.EXTENSION)
+                    ? BinaryDictionary.open(paths[source]).words()
+                    : AnagramMe.readTextDict(paths[source], AnagramMe.WORD_LENGTH_THRESHOLD, maxLines);
+            for (FrequencyContainer container : words) {
+                Entry entry = entriesByWord.get(container.word);
+                if (entry == null) {
+                    entry = new Entry(container.word, container.letters, paths.length);
+                    entriesByWord.put(container.word, entry);
+                    // the table keeps the order words are first seen in, so equal scores keep the dictionaries' order
+                    entries.add(entry);
+                }
+                // a word listed twice in one dictionary keeps its better score
+                long bit = 1L << source;
+                entry.scores[source] = (entry.presentIn & bit) == 0 ? container.frequency : Math.max(entry.scores[source], container.frequency);
+                entry.presentIn |= bit;
+            }
+        }
+    }
+
+    /**
+     * Scores, sorts and groups the merged table under a weight profile
+     *
+     * @param name                     the name to pick the profile by
+     * @param weights                  the weight of each dictionary, by its file name without the extension;
+     *                                 dictionaries left out get no weight
+     * @return                         the AnagramMe searching the profile
+     * @throws IllegalArgumentException if a weight names no dictionary
+     */
+    public synchronized AnagramMe addProfile(String name, Map<String, Double> weights) {
+        double[] sourceWeights = new double[sources.size()];
+        long weighted = 0;
+        for (Map.Entry<String, Double> weight : weights.entrySet()) {
+            int source = sources.indexOf(weight.getKey());
+            if (source < 0) {
+                throw new IllegalArgumentException("No dictionary called " + weight.getKey() + "; there are " + sources);
+            }
+            sourceWeights[source] = weight.getValue();
+            weighted |= weight.getValue() != 0 ? 1L << source : 0;
+        }
+
+        List<FrequencyContainer> dict = new ArrayList<>();
+        for (Entry entry : entries) {
+            if ((entry.presentIn & weighted) == 0) {
+                continue;
+            }
+            double score = 0;
+            for (int source = 0; source < sourceWeights.length; source++) {
+                score += sourceWeights[source] * entry.scores[source];
+            }
+            // scores are ints everywhere else, so a huge weight saturates rather than wraps
+            int frequency = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, Math.round(score)));
+            dict.add(new FrequencyContainer(frequency, entry.word, entry.letters));
+        }
+        AnagramMe.sortByScore(dict);
+
+        AnagramMe anagrammer = new AnagramMe("merged" + sources + "|" + name + weights, dict);
+        profiles.put(name, anagrammer);
+        return anagrammer;
+    }
+
+    /**
+     * @param name                     the name the profile was added under
+     * @return                         the AnagramMe searching the profile, or null if there is none by that name
+     */
+    public synchronized AnagramMe profile(String name) {
+        return profiles.get(name);
+    }
+
+    /**
+     * @return                         every profile by name, in the order they were added
+     */
+    public synchronized Map<String, AnagramMe> profiles() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(profiles));
+    }
+
+    /**
+     * @return                         the names of the dictionaries, as weight profiles refer to them
+     */
+    public List<String> sources() {
+        return Collections.unmodifiableList(sources);
+    }
+
+    /**
+     * @return                         the number of distinct words across the dictionaries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Writes a profile as a binary dictionary, so other processes (e.g. SearchWorkers) can map it instead of merging
+     *
+     * @param name                     the name the profile was added under
+     * @param binaryPath               where to write the binary dictionary
+     */
+    public void writeProfile(String name, String binaryPath) throws IOException {
+        AnagramMe anagrammer = profile(name);
+        if (anagrammer == null) {
+            throw new IllegalArgumentException("No profile called " + name);
+        }
+        BinaryDictionary.write(anagrammer.dict, binaryPath);
+    }
+
+    /**
+     * Parses weight profiles written as name:dictionary=weight,dictionary=weight;name:..., e.g.
+     * slang:log-words=1;plain:words=100000,log-words=0.01
+     *
+     * @param spec                     the profiles
+     * @return                         the weights of each profile by name, in the order given
+     */
+    public static Map<String, Map<String, Double>> parseProfiles(String spec) {
+        Map<String, Map<String, Double>> profiles = new LinkedHashMap<>();
+        for (String profile : spec.split(";")) {
+            int colon = profile.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("A profile needs a name: " + profile);
+            }
+            Map<String, Double> weights = new LinkedHashMap<>();
+            for (String weight : profile.substring(colon + 1).split(",")) {
+                String[] sourceAndWeight = weight.split("=");
+                if (sourceAndWeight.length != 2) {
+                    throw new IllegalArgumentException("A weight is dictionary=weight: " + weight);
+                }
+                weights.put(sourceAndWeight[0].trim(), Double.parseDouble(sourceAndWeight[1]));
+            }
+            profiles.put(profile.substring(0, colon).trim(), weights);
+        }
+        return profiles;
+    }
+
+    /**
+     * Arguments: weight profiles (see parseProfiles), then the dictionaries. Prints the best anagrams of a name under
+     * every profile.
+     */
+    public static void main(String[] args) throws IOException {
+        String spec = args.length > 0 ? args[0] : "slang:log-words=1;plain:words=1;mixed:log-words=1,words=1000000,wikipedia-words=10";
+        String[] paths = args.length > 1
+                ? Arrays.copyOfRange(args, 1, args.length)
+                : new String[]{"./log-words.txt", "./words.txt", "./wikipedia-words.txt"};
+
+        MergedDictionary merged = new MergedDictionary(paths);
+        for (Map.Entry<String, Map<String, Double>> profile : parseProfiles(spec).entrySet()) {
+            merged.addProfile(profile.getKey(), profile.getValue());
+        }
+        System.out.println("Merged " + merged.size() + " words from " + merged.sources());
+        for (Map.Entry<String, AnagramMe> profile : merged.profiles().entrySet()) {
+            List<ScoredAnagram> anagrams = profile.getValue().findBestAnagrams("Elliot Bayes Potter", 10);
+            System.out.println(profile.getKey() + " (" + profile.getValue().dict.size() + " words): " + anagrams);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+import org.jsoup.Jsoup;
+
+import java.io.IOException;
+
+/**
+ * Gets the HTML of a page. The crawl engine only talks to the web through this, so a crawl can run against saved
+ * pages (see CrawlStub) instead of the live sites.
+ */
+public interface PageFetcher {
+    /**
+     * @param url                      the page to get
+     * @return                         the HTML of the page
+     * @throws IOException             if the page cannot be fetched
+     */
+    String fetch(String url) throws IOException;
+
+    /**
+     * @return                         a fetcher that goes to the live site
+     */
+    static PageFetcher jsoup() {
+        return url -> Jsoup.connect(url).execute().body();
+    }
+}
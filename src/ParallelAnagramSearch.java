@@ -0,0 +1,169 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Searches the subtree below one partial anagram on a fork/join pool. Branches that still have many letters left are
+ * forked while the pool is short of work; the rest run through the sequential anagramHelper. Every task collects
+ * into its own TopAnagrams, which are merged as the tasks are joined, so there is no shared collector to contend on.
+ *
+ * Cancelling the task passed to the pool, or interrupting the thread a task runs on, stops every task of the search
+ * within one word; what was found by then comes back marked incomplete.
+ */
+public class ParallelAnagramSearch extends RecursiveTask<TopAnagrams> {
+    private static final long serialVersionUID = 1L;
+    // branches with fewer letters left than this are too small to be worth a task of their own
+    private static final int MIN_SPLIT_LETTERS = 6;
+    // we stop forking once this many of our tasks are waiting to be stolen
+    private static final int MAX_SURPLUS_TASKS = 3;
+
+    private final AnagramMe anagrammer;
+    private final List<FrequencyContainer> dict;
+    private final FrequencyMap frequencyMap;
+    private final WordPath path;
+    private final int minimumIndex;
+    private final int capacity;
+    // the best threshold any task has reached, as the bits of a double; every task's collector is a subset, so it
+    // bounds them all
+    private final AtomicLong sharedThreshold;
+    // the task the search was started with; the tasks it forks only learn of a cancellation through it
+    private final ParallelAnagramSearch root;
+
+    public ParallelAnagramSearch(AnagramMe anagrammer, List<FrequencyContainer> dict, FrequencyMap frequencyMap, int capacity) {
+        this(anagrammer, dict, frequencyMap, new WordPath(anagrammer.getScorer().empty()), 0, capacity,
+                new AtomicLong(Double.doubleToLongBits(Double.NEGATIVE_INFINITY)), null);
+    }
+
+    private ParallelAnagramSearch(
+            AnagramMe anagrammer,
+            List<FrequencyContainer> dict,
+            FrequencyMap frequencyMap,
+            WordPath path,
+            int minimumIndex,
+            int capacity,
+            AtomicLong sharedThreshold,
+            ParallelAnagramSearch root
+    ) {
+        this.anagrammer = anagrammer;
+        this.dict = dict;
+        this.frequencyMap = frequencyMap;
+        this.path = path;
+        this.minimumIndex = minimumIndex;
+        this.capacity = capacity;
+        this.sharedThreshold = sharedThreshold;
+        this.root = root == null ? this : root;
+    }
+
+    /**
+     * @return                         true once the search has been cancelled or this thread interrupted
+     */
+    private boolean stopped() {
+        return root.isCancelled() || Thread.currentThread().isInterrupted();
+    }
+
+    @Override
+    protected TopAnagrams compute() {
+        TopAnagrams topAnagrams = new TopAnagrams(capacity, anagrammer.getScorer());
+        AnagramSink sink = new SignatureExpander(new SharedThresholdSink(topAnagrams, sharedThreshold, this), anagrammer.getScorer());
+        SearchStats stats = topAnagrams.getStats();
+        stats.nodesVisited++;
+        stats.maxDepth = Math.max(stats.maxDepth, path.length());
+        List<FrequencyContainer> filteredDict = anagrammer.filterDict(dict, minimumIndex, frequencyMap, stats);
+        List<ParallelAnagramSearch> forkedTasks = new ArrayList<>();
+
+        // this mirrors anagramHelper, except that big branches become tasks
+        int index = 0;
+        for (FrequencyContainer container : filteredDict) {
+            if (stopped()) {
+                break;
+            }
+            if (path.scorer().upperBound(frequencyMap.size(), anagrammer.minWordLength, container.frequency) <= sink.threshold()) {
+                break;
+            }
+
+            path.push(container);
+            int remainingLetters = frequencyMap.size() - container.length;
+
+            if (remainingLetters == 0) {
+                stats.solutions++;
+                sink.acceptIds(path.ids(), path.length(), anagrammer.dict, path.scorer().score());
+            }
+            else if (remainingLetters >= MIN_SPLIT_LETTERS && getSurplusQueuedTaskCount() < MAX_SURPLUS_TASKS && !stopped()) {
+                // the task gets its own copy of the pool and path, since we keep mutating ours
+                FrequencyMap newFrequencyMap = frequencyMap.copy();
+                newFrequencyMap.subtract(container.letters);
+                ParallelAnagramSearch task = new ParallelAnagramSearch(
+                        anagrammer, filteredDict, newFrequencyMap, path.copy(), index, capacity, sharedThreshold, root
+                );
+                task.fork();
+                forkedTasks.add(task);
+            }
+            else {
+                frequencyMap.subtract(container.letters);
+                anagrammer.anagramHelper(filteredDict, frequencyMap, path, sink, index, stats);
+                frequencyMap.add(container.letters);
+            }
+
+            path.pop(container);
+            index++;
+        }
+
+        // the forked tasks see the same cancellation, so they come back quickly with what they have
+        for (ParallelAnagramSearch task : forkedTasks) {
+            topAnagrams.merge(task.join());
+        }
+        if (stopped()) {
+            topAnagrams.markIncomplete(0);
+        }
+        return topAnagrams;
+    }
+
+    /**
+     * Collects into a task-local TopAnagrams, but prunes against the best threshold of any task, and stops the
+     * sequential search below a task once the search is cancelled
+     */
+    private static class SharedThresholdSink implements AnagramSink {
+        private final TopAnagrams topAnagrams;
+        private final AtomicLong sharedThreshold;
+        private final ParallelAnagramSearch task;
+
+        SharedThresholdSink(TopAnagrams topAnagrams, AtomicLong sharedThreshold, ParallelAnagramSearch task) {
+            this.topAnagrams = topAnagrams;
+            this.sharedThreshold = sharedThreshold;
+            this.task = task;
+        }
+
+        @Override
+        public void accept(List<FrequencyContainer> anagram) {
+            topAnagrams.accept(anagram);
+            shareThreshold();
+        }
+
+        @Override
+        public void acceptIds(int[] wordIds, int length, List<FrequencyContainer> dict, double score) {
+            topAnagrams.acceptIds(wordIds, length, dict, score);
+            shareThreshold();
+        }
+
+        private void shareThreshold() {
+            double localThreshold = topAnagrams.threshold();
+            // only write when we raise it, so the shared value is mostly read
+            long shared = sharedThreshold.get();
+            while (localThreshold > Double.longBitsToDouble(shared)
+                    && !sharedThreshold.compareAndSet(shared, Double.doubleToLongBits(localThreshold))) {
+                shared = sharedThreshold.get();
+            }
+        }
+
+        @Override
+        public double threshold() {
+            return Math.max(topAnagrams.threshold(), Double.longBitsToDouble(sharedThreshold.get()));
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return task.stopped();
+        }
+    }
+}
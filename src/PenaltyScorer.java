@@ -0,0 +1,68 @@
+/**
+ * The original model: the frequency sum of the words divided by the word count to the power of penaltySize. A
+ * penaltySize of 1 takes the average; 2 divides by the count again, which favours fewer, longer words.
+ */
+public class PenaltyScorer implements Scorer {
+    private final int penaltySize;
+    private long frequencySum = 0;
+    private int wordCount = 0;
+
+    public PenaltyScorer(int penaltySize) {
+        this.penaltySize = penaltySize;
+    }
+
+    @Override
+    public void push(FrequencyContainer word) {
+        frequencySum += word.frequency;
+        wordCount++;
+    }
+
+    @Override
+    public void pop(FrequencyContainer word) {
+        frequencySum -= word.frequency;
+        wordCount--;
+    }
+
+    @Override
+    public double score() {
+        return frequencySum / penalty(wordCount);
+    }
+
+    @Override
+    public double upperBound(int remainingLetters, int minWordLength, int maxFrequency) {
+        double bound = Double.NEGATIVE_INFINITY;
+        // we need at least one more word, and each takes at least minWordLength letters
+        int maxWords = Math.max(1, remainingLetters / minWordLength);
+        for (int words = 1; words <= maxWords; words++) {
+            double sum = frequencySum + (double) words * maxFrequency;
+            bound = Math.max(bound, sum / penalty(wordCount + words));
+        }
+        return bound;
+    }
+
+    private double penalty(int words) {
+        double penalty = 1;
+        for (int i = 0; i < penaltySize; i++) {
+            penalty *= words;
+        }
+        return penalty;
+    }
+
+    @Override
+    public Scorer empty() {
+        return new PenaltyScorer(penaltySize);
+    }
+
+    @Override
+    public Scorer copy() {
+        PenaltyScorer copy = new PenaltyScorer(penaltySize);
+        copy.frequencySum = frequencySum;
+        copy.wordCount = wordCount;
+        return copy;
+    }
+
+    @Override
+    public String name() {
+        return "penalty" + penaltySize;
+    }
+}
@@ -0,0 +1,225 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers ranked results across queries. Keys describe everything a result depends on: the dictionary, the scoring
+ * parameters and the sorted letters of the name, so reordered or re-spaced names share an entry. The most recently
+ * used entries are kept in memory; with a spill directory, every entry is also written to disk so it survives a
+ * restart and can be reloaded after eviction.
+ */
+public class ResultCache {
+    private final int maxEntries;
+    private final Path spillDirectory;
+    private final LinkedHashMap<String, Entry> entries;
+    private long hits = 0;
+    private long diskHits = 0;
+    private long misses = 0;
+
+    /**
+     * @param maxEntries               the number of results to keep in memory
+     * @param spillDirectory           where to persist results, or null to keep them in memory only
+     * @throws IOException             if the spill directory cannot be created
+     */
+    public ResultCache(int maxEntries, String spillDirectory) throws IOException {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive, got " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.spillDirectory = spillDirectory == null ? null : Files.createDirectories(Paths.get(spillDirectory));
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > ResultCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Looks up the best anagrams for a key, first in memory and then on disk. The disk is read without holding the
+     * lock, so one slow read does not stall every other lookup.
+     *
+     * @param key                      the key of the query
+     * @param count                    the number of anagrams wanted
+     * @return                         the best count anagrams, best first, or null if no cached result covers them
+     */
+    public List<ScoredAnagram> get(String key, int count) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.covers(count)) {
+                hits++;
+                return entry.best(count);
+            }
+        }
+
+        Entry spilled = readSpilled(key);
+        synchronized (this) {
+            // someone may have put a result while we were reading; it is at least as new as the file
+            Entry entry = entries.get(key);
+            if (entry != null && entry.covers(count)) {
+                hits++;
+                return entry.best(count);
+            }
+            if (spilled != null && spilled.covers(count)) {
+                entries.put(key, spilled);
+                diskHits++;
+                return spilled.best(count);
+            }
+            misses++;
+            return null;
+        }
+    }
+
+    /**
+     * Stores a result; like get, the disk is written outside the lock
+     *
+     * @param key                      the key of the query
+     * @param capacity                 the number of anagrams the search was asked for
+     * @param anagrams                 the anagrams it found, best first
+     */
+    public void put(String key, int capacity, List<ScoredAnagram> anagrams) {
+        Entry entry = new Entry(capacity, anagrams);
+        synchronized (this) {
+            entries.put(key, entry);
+        }
+        if (spillDirectory != null) {
+            writeSpilled(key, entry);
+        }
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long diskHits() {
+        return diskHits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized double hitRate() {
+        long lookups = hits + diskHits + misses;
+        return lookups == 0 ? 0 : (double) (hits + diskHits) / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "{entries: " + entries.size() + ", hits: " + hits + ", diskHits: " + diskHits + ", misses: " + misses + "}";
+    }
+
+    /**
+     * Spilled results are stored one per file: the key, the capacity, then one "score<TAB>word:frequency ..." line per
+     * anagram. Files are named after a hash of the key, and the key inside guards against collisions.
+     */
+    private Path spillPath(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                name.append(String.format("%02x", digest[i]));
+            }
+            return spillDirectory.resolve(name + ".txt");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeSpilled(String key, Entry entry) {
+        Path path = spillPath(key);
+        Path temporary;
+        try {
+            // two puts of the same key may be writing at once, so each gets its own temporary file
+            temporary = Files.createTempFile(spillDirectory, path.getFileName().toString(), ".tmp");
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            writer.write(key + "\n" + entry.capacity + "\n");
+            for (ScoredAnagram anagram : entry.anagrams) {
+                writer.write(Double.toString(anagram.score));
+                List<FrequencyContainer> words = anagram.words();
+                for (int i = 0; i < words.size(); i++) {
+                    writer.write(i == 0 ? "\t" : " ");
+                    writer.write(words.get(i).toString());
+                }
+                writer.write("\n");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        // readers never see a half-written file
+        try {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private Entry readSpilled(String key) {
+        if (spillDirectory == null) {
+            return null;
+        }
+        Path path = spillPath(key);
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            if (!key.equals(reader.readLine())) {
+                return null;
+            }
+            int capacity = Integer.parseInt(reader.readLine());
+            List<ScoredAnagram> anagrams = new ArrayList<>();
+            String nextLine;
+            while ((nextLine = reader.readLine()) != null) {
+                String[] splitLine = nextLine.split("\t");
+                List<FrequencyContainer> words = new ArrayList<>();
+                for (String word : splitLine[1].split(" ")) {
+                    int colon = word.lastIndexOf(':');
+                    words.add(new FrequencyContainer(Integer.parseInt(word.substring(colon + 1)), word.substring(0, colon)));
+                }
+                anagrams.add(new ScoredAnagram(words, Double.parseDouble(splitLine[0]), anagrams.size()));
+            }
+            return new Entry(capacity, anagrams);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static final class Entry {
+        private final int capacity;
+        private final List<ScoredAnagram> anagrams;
+
+        Entry(int capacity, List<ScoredAnagram> anagrams) {
+            this.capacity = capacity;
+            this.anagrams = anagrams;
+        }
+
+        /**
+         * A result answers any query for at most as many anagrams, or any query at all if it holds every anagram
+         */
+        boolean covers(int count) {
+            return count <= capacity || anagrams.size() < capacity;
+        }
+
+        List<ScoredAnagram> best(int count) {
+            return new ArrayList<>(anagrams.subList(0, Math.min(count, anagrams.size())));
+        }
+    }
+}
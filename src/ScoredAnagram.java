@@ -0,0 +1,64 @@
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * An anagram together with the score it was ranked by. The words are kept as a packed array of ids into a dict and
+ * only turned back into containers when someone asks for them.
+ */
+public class ScoredAnagram {
+    public int[] wordIds;
+    // the table wordIds index into
+    public List<FrequencyContainer> dict;
+    public double score;
+    // the order the anagram was found in, so that ties rank the same way a stable sort would
+    public long sequence;
+
+    public ScoredAnagram(int[] wordIds, List<FrequencyContainer> dict, double score, long sequence) {
+        this.wordIds = wordIds;
+        this.dict = dict;
+        this.score = score;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Wraps an anagram that is already a list of words; the list itself serves as the table its ids index into
+     */
+    public ScoredAnagram(List<FrequencyContainer> words, double score, long sequence) {
+        this(new int[words.size()], words, score, sequence);
+        for (int i = 0; i < wordIds.length; i++) {
+            wordIds[i] = i;
+        }
+    }
+
+    /**
+     * @return                         the words of the anagram, decoded on access
+     */
+    public List<FrequencyContainer> words() {
+        return new AbstractList<FrequencyContainer>() {
+            @Override
+            public FrequencyContainer get(int index) {
+                return dict.get(wordIds[index]);
+            }
+
+            @Override
+            public int size() {
+                return wordIds.length;
+            }
+        };
+    }
+
+    /**
+     * Orders anagrams best first: higher score, then earlier found
+     */
+    public static int compareBestFirst(ScoredAnagram anagram1, ScoredAnagram anagram2) {
+        if (anagram1.score != anagram2.score) {
+            return Double.compare(anagram2.score, anagram1.score);
+        }
+        return Long.compare(anagram1.sequence, anagram2.sequence);
+    }
+
+    @Override
+    public String toString() {
+        return words().toString();
+    }
+}
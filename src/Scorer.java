@@ -0,0 +1,92 @@
+import java.util.List;
+
+/**
+ * Ranks anagrams. A scorer follows the search: words are pushed as the search takes them and popped as it backs out,
+ * so the score of the current words is always at hand without rescoring them.
+ *
+ * The search relies on two properties of every scorer:
+ *   - swapping a word for one of the same length and a higher frequency never lowers the score (this is what lets a
+ *     signature group stand in for its members)
+ *   - upperBound never underestimates, and never grows as maxFrequency shrinks (this is what lets the search stop
+ *     at the first word of the sorted dict that cannot beat the threshold)
+ */
+public interface Scorer {
+    /**
+     * Adds a word to the current anagram
+     *
+     * @param word                     the word the search just took
+     */
+    void push(FrequencyContainer word);
+
+    /**
+     * Removes the last pushed word from the current anagram
+     *
+     * @param word                     the word that was pushed last
+     */
+    void pop(FrequencyContainer word);
+
+    /**
+     * @return                         the score of the current words as a complete anagram; higher is better
+     */
+    double score();
+
+    /**
+     * Bounds the best score of any anagram completing the current words with at least one more word
+     *
+     * @param remainingLetters         the number of letters still to use
+     * @param minWordLength            the shortest any further word can be
+     * @param maxFrequency             the highest frequency any further word can have
+     * @return                         a score no completion can beat
+     */
+    double upperBound(int remainingLetters, int minWordLength, int maxFrequency);
+
+    /**
+     * @return                         a scorer of the same model with no words pushed
+     */
+    Scorer empty();
+
+    /**
+     * @return                         a scorer of the same model with the same words pushed, e.g. for a forked task
+     */
+    Scorer copy();
+
+    /**
+     * @return                         a short name for the model, which goes into result cache keys
+     */
+    String name();
+
+    /**
+     * Looks up one of the bundled scorers by name: penalty1, penalty2, ... (the original model with that
+     * penaltySize), length or maxword
+     *
+     * @param name                     the name of the scorer, as name() would return it
+     * @return                         a scorer with no words pushed
+     */
+    static Scorer named(String name) {
+        if (name.startsWith("penalty")) {
+            return new PenaltyScorer(Integer.parseInt(name.substring("penalty".length())));
+        }
+        switch (name) {
+            case "length":
+                return new LengthWeightedScorer();
+            case "maxword":
+                return new MaxWordScorer();
+            default:
+                throw new IllegalArgumentException("Unknown scorer: " + name);
+        }
+    }
+
+    /**
+     * Scores a whole anagram at once, for anagrams that did not come out of a search
+     *
+     * @param words                    the words of the anagram
+     * @return                         the score of the anagram
+     */
+    default double scoreOf(List<FrequencyContainer> words) {
+        Scorer scorer = empty();
+        for (FrequencyContainer word : words) {
+            scorer.push(word);
+        }
+        return scorer.score();
+    }
+}
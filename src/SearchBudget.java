@@ -0,0 +1,77 @@
+import java.util.List;
+
+/**
+ * A limit on how much a search may do: a wall-clock time, a number of search nodes, or both. The clock starts when
+ * the budget is made. A search sees the budget through its sink's isCancelled(), so it stops within one word of
+ * running out, and the budget remembers that it did.
+ */
+public class SearchBudget {
+    // reading the clock costs more than the rest of isCancelled, so we only look every so many calls
+    private static final int CLOCK_CHECK_INTERVAL = 64;
+
+    private final long deadlineNanos;
+    private final long maxNodes;
+    private int checks = 0;
+    private boolean exhausted = false;
+
+    /**
+     * @param timeMillis               the time the search may take, or 0 for no time limit
+     * @param maxNodes                 the number of search nodes it may visit, or 0 for no node limit
+     */
+    public SearchBudget(long timeMillis, long maxNodes) {
+        this.deadlineNanos = timeMillis > 0 ? System.nanoTime() + timeMillis * 1_000_000 : Long.MAX_VALUE;
+        this.maxNodes = maxNodes > 0 ? maxNodes : Long.MAX_VALUE;
+    }
+
+    /**
+     * @param stats                    the stats of the search, which count its nodes
+     * @return                         true once the budget has run out; it stays run out
+     */
+    public boolean exhausted(SearchStats stats) {
+        if (!exhausted && stats.nodesVisited >= maxNodes) {
+            exhausted = true;
+        }
+        if (!exhausted && ++checks % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime() >= deadlineNanos) {
+            exhausted = true;
+        }
+        return exhausted;
+    }
+
+    /**
+     * @return                         true if a search has run the budget out
+     */
+    public boolean exhausted() {
+        return exhausted;
+    }
+
+    /**
+     * Wraps a sink so the search cancels itself once the budget runs out
+     *
+     * @param sink                     the sink receiving the anagrams
+     * @param stats                    the stats of the search, which count its nodes
+     * @return                         the wrapped sink
+     */
+    public AnagramSink limit(AnagramSink sink, SearchStats stats) {
+        return new AnagramSink() {
+            @Override
+            public void accept(List<FrequencyContainer> anagram) {
+                sink.accept(anagram);
+            }
+
+            @Override
+            public void acceptIds(int[] wordIds, int length, List<FrequencyContainer> dict, double score) {
+                sink.acceptIds(wordIds, length, dict, score);
+            }
+
+            @Override
+            public double threshold() {
+                return sink.threshold();
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return exhausted(stats) || sink.isCancelled();
+            }
+        };
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Counters and timers for one query. A search updates these as plain fields from a single thread; parallel tasks each
+ * keep their own and merge them on join.
+ */
+public class SearchStats {
+    public long nodesVisited = 0;
+    public long filterDictCalls = 0;
+    public long wordsScanned = 0;
+    public long wordsRejected = 0;
+    // anagrams over signatures, as the recursion emits them, before the signature groups are expanded into words
+    public long solutions = 0;
+    // anagrams over real words, as the collector receives them
+    public long anagrams = 0;
+    public int maxDepth = 0;
+    public long searchNanos = 0;
+    public long sortNanos = 0;
+
+    /**
+     * Records one filterDict pass
+     *
+     * @param scanned                  the number of words looked at
+     * @param kept                     the number of words that fit
+     */
+    public void filtered(int scanned, int kept) {
+        filterDictCalls++;
+        wordsScanned += scanned;
+        wordsRejected += scanned - kept;
+    }
+
+    /**
+     * Folds another query's (or task's) stats into these
+     *
+     * @param other                    the stats to merge in
+     */
+    public void merge(SearchStats other) {
+        nodesVisited += other.nodesVisited;
+        filterDictCalls += other.filterDictCalls;
+        wordsScanned += other.wordsScanned;
+        wordsRejected += other.wordsRejected;
+        solutions += other.solutions;
+        anagrams += other.anagrams;
+        maxDepth = Math.max(maxDepth, other.maxDepth);
+        sortNanos += other.sortNanos;
+        // parallel tasks overlap in time, so the search time is the caller's wall clock rather than a sum
+    }
+
+    public String toJson() {
+        return "{\"nodesVisited\": " + nodesVisited
+                + ", \"filterDictCalls\": " + filterDictCalls
+                + ", \"wordsScanned\": " + wordsScanned
+                + ", \"wordsRejected\": " + wordsRejected
+                + ", \"solutions\": " + solutions
+                + ", \"anagrams\": " + anagrams
+                + ", \"maxDepth\": " + maxDepth
+                + ", \"searchMillis\": " + searchNanos / 1e6
+                + ", \"sortMillis\": " + sortNanos / 1e6
+                + "}";
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+}
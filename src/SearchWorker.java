@@ -0,0 +1,239 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * One worker process of a DistributedSearch. It loads the same dictionary as the coordinator, connects back to it,
+ * and searches whatever ranges of top-level branches it is given: branch i is the search below the i-th word of the
+ * name's filtered signature dict, exactly as in anagramHelper's top-level loop.
+ *
+ * The conversation is tab-separated lines. Every line but QUIT carries the number of the query it is about, so the
+ * coordinator can drop what is left over from a query that failed. From the coordinator:
+ *   QUERY query count scorer name  start a new name; answered with READY query branches
+ *   RANGE query from to threshold  search branches [from, to); answered with ANAGRAM lines and then DONE
+ *   THRESHOLD query score          the best K-th score any worker has reached, to prune against
+ *   SPLIT query                    give up the unstarted half of the current range; answered with SPLIT query from to
+ *   QUIT
+ * To the coordinator:
+ *   READY query branches
+ *   ANAGRAM query score id,id,...  an anagram that made it into this worker's top K
+ *   DONE query nodes solutions     the range is finished, with its stats
+ *   SPLIT query from to            the branches given up, an empty range if there were none
+ */
+public class SearchWorker {
+    private final AnagramMe anagrammer;
+    private final BufferedReader reader;
+    private final BufferedWriter writer;
+    // searches run here, so this thread stays free to read THRESHOLD and SPLIT
+    private final ExecutorService searchThread = Executors.newSingleThreadExecutor();
+
+    // the query being searched
+    private volatile String query = "";
+    private List<FrequencyContainer> filteredDict;
+    private FrequencyMap frequencyMap;
+    private TopAnagrams topAnagrams;
+    private volatile double sharedThreshold = Double.NEGATIVE_INFINITY;
+
+    // the range being searched: the branch in progress and the end of the range, guarded by rangeLock
+    private final Object rangeLock = new Object();
+    private int currentBranch = 0;
+    private int rangeEnd = 0;
+
+    public SearchWorker(AnagramMe anagrammer, Socket socket) throws IOException {
+        this.anagrammer = anagrammer;
+        this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /**
+     * Answers the coordinator until it says QUIT or hangs up
+     */
+    public void run() throws IOException {
+        try {
+            String nextLine;
+            while ((nextLine = reader.readLine()) != null) {
+                String[] command = nextLine.split("\t");
+                switch (command[0]) {
+                    case "QUERY":
+                        searchThread.execute(() -> query(command[1], Integer.parseInt(command[2]), command[3], command[4]));
+                        break;
+                    case "RANGE":
+                        // the range is ours from now on, so a SPLIT right behind it can already take part of it
+                        synchronized (rangeLock) {
+                            currentBranch = Integer.parseInt(command[2]) - 1;
+                            rangeEnd = Integer.parseInt(command[3]);
+                        }
+                        searchThread.execute(() -> search(command[1], Integer.parseInt(command[2]), Double.parseDouble(command[4])));
+                        break;
+                    case "THRESHOLD":
+                        if (command[1].equals(query)) {
+                            sharedThreshold = Math.max(sharedThreshold, Double.parseDouble(command[2]));
+                        }
+                        break;
+                    case "SPLIT":
+                        split(command[1]);
+                        break;
+                    case "QUIT":
+                        return;
+                    default:
+                        throw new IOException("Unknown command: " + nextLine);
+                }
+            }
+        } finally {
+            searchThread.shutdownNow();
+        }
+    }
+
+    private void query(String query, int count, String scorerName, String name) {
+        this.query = query;
+        anagrammer.setScorer(Scorer.named(scorerName));
+        topAnagrams = new TopAnagrams(count, anagrammer.getScorer());
+        sharedThreshold = Double.NEGATIVE_INFINITY;
+        frequencyMap = anagrammer.generateFrequencyMap(name);
+        filteredDict = anagrammer.filterDict(anagrammer.signatureDict, 0, frequencyMap, topAnagrams.getStats());
+        send("READY\t" + query + "\t" + filteredDict.size());
+        flush();
+    }
+
+    /**
+     * Searches the branches from a given one up to the end of the range, which a SPLIT may move down while we go;
+     * this mirrors the top-level loop of anagramHelper
+     */
+    private void search(String query, int from, double threshold) {
+        sharedThreshold = Math.max(sharedThreshold, threshold);
+        SearchStats stats = new SearchStats();
+        Scorer scorer = anagrammer.getScorer();
+        AnagramSink sink = new SignatureExpander(new StreamingSink(query), scorer);
+        WordPath path = new WordPath(scorer.empty());
+
+        for (int index = from; ; index++) {
+            synchronized (rangeLock) {
+                if (index >= rangeEnd) {
+                    break;
+                }
+                currentBranch = index;
+            }
+            FrequencyContainer container = filteredDict.get(index);
+            // the dict is sorted best first, so once this branch cannot beat the threshold, no later one can either
+            if (path.scorer().upperBound(frequencyMap.size(), anagrammer.minWordLength, container.frequency) <= sink.threshold()) {
+                break;
+            }
+
+            path.push(container);
+            if (container.length == frequencyMap.size()) {
+                stats.solutions++;
+                sink.acceptIds(path.ids(), path.length(), anagrammer.dict, path.scorer().score());
+            }
+            else {
+                frequencyMap.subtract(container.letters);
+                anagrammer.anagramHelper(filteredDict, frequencyMap, path, sink, index, stats);
+                frequencyMap.add(container.letters);
+            }
+            path.pop(container);
+        }
+
+        synchronized (rangeLock) {
+            rangeEnd = currentBranch;
+        }
+        send("DONE\t" + query + "\t" + stats.nodesVisited + "\t" + stats.solutions);
+        flush();
+    }
+
+    /**
+     * Gives the coordinator the upper half of the branches we have not started yet
+     */
+    private void split(String query) {
+        int from;
+        int to;
+        synchronized (rangeLock) {
+            int unstarted = rangeEnd - (currentBranch + 1);
+            to = rangeEnd;
+            from = unstarted > 0 ? rangeEnd - (unstarted + 1) / 2 : rangeEnd;
+            rangeEnd = from;
+        }
+        send("SPLIT\t" + query + "\t" + from + "\t" + to);
+        flush();
+    }
+
+    /**
+     * Keeps this worker's top K, and streams every anagram that gets into it to the coordinator
+     */
+    private class StreamingSink implements AnagramSink {
+        private final String query;
+
+        StreamingSink(String query) {
+            this.query = query;
+        }
+
+        @Override
+        public void accept(List<FrequencyContainer> anagram) {
+            // the words are from the dict, so their ids are what the coordinator expects
+            int[] wordIds = new int[anagram.size()];
+            for (int i = 0; i < wordIds.length; i++) {
+                wordIds[i] = anagram.get(i).id;
+            }
+            acceptIds(wordIds, wordIds.length, anagrammer.dict, anagrammer.getScorer().scoreOf(anagram));
+        }
+
+        @Override
+        public void acceptIds(int[] wordIds, int length, List<FrequencyContainer> dict, double score) {
+            if (score <= threshold()) {
+                return;
+            }
+            topAnagrams.acceptIds(wordIds, length, dict, score);
+
+            StringBuilder line = new StringBuilder("ANAGRAM\t").append(query).append('\t').append(score).append('\t');
+            for (int i = 0; i < length; i++) {
+                line.append(i == 0 ? "" : ",").append(wordIds[i]);
+            }
+            send(line.toString());
+        }
+
+        @Override
+        public double threshold() {
+            return Math.max(topAnagrams.threshold(), sharedThreshold);
+        }
+    }
+
+    private void send(String line) {
+        synchronized (writer) {
+            try {
+                writer.write(line);
+                writer.write('\n');
+            } catch (IOException e) {
+                // the coordinator is gone; the reader will see it hang up and stop us
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void flush() {
+        synchronized (writer) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Arguments: the coordinator's host and port, and the dictionary path (the same one the coordinator loaded)
+     */
+    public static void main(String[] args) throws IOException {
+        // stdout is not ours to talk on; AnagramMe reports progress there
+        System.setOut(System.err);
+        AnagramMe anagrammer = new AnagramMe(args[2]);
+        try (Socket socket = new Socket(args[0], Integer.parseInt(args[1]))) {
+            socket.setTcpNoDelay(true);
+            new SearchWorker(anagrammer, socket).run();
+        }
+    }
+}
@@ -0,0 +1,533 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Word counts for a whole crawl, in bounded memory. Words are spread over shards that each have their own lock, so
+ * fetchers counting different words rarely wait on each other. When a shard outgrows its share of the memory budget,
+ * it is written out as a run of word:count lines sorted by word, and starts over empty. At the end the runs are k-way
+ * merged, adding up the counts of each word.
+ *
+ * Runs are only ever added or (after flush) compacted, never changed, so a checkpoint can name the runs it covers.
+ * A flush writes whatever the shards hold as one run, and compaction is size-tiered: runs of about the same size are
+ * merged once there are a few of them, so each count is rewritten a logarithmic number of times over a crawl rather
+ * than on every checkpoint. The one thing kept for every word is a 64-bit fingerprint, so we still know how many
+ * distinct words we have.
+ */
+public class ShardedWordCounts {
+    private static final int SHARDS = 16;
+    // roughly what a word costs in a WordCounter: the String, its slots in the table, and the table's slack
+    private static final int BYTES_PER_WORD = 96;
+    // the most runs merged at once; more than this are merged in rounds
+    private static final int MAX_MERGE_FAN_IN = 64;
+    // runs fall into tiers of sizes a factor of TIER_FAN_IN apart, and this many runs in one tier are merged
+    private static final int TIER_FAN_IN = 4;
+    private static final String RUN_PREFIX = "run-";
+    private static final String RUN_SUFFIX = ".txt";
+
+    /**
+     * One shard: the words counted since its last spill, and a fingerprint of every word it has ever seen
+     */
+    private static class Shard {
+        WordCounter counter = new WordCounter();
+        long bytes = 0;
+        final FingerprintSet seen = new FingerprintSet();
+    }
+
+    private final Shard[] shards = new Shard[SHARDS];
+    private final long shardBudget;
+    private final long memoryBudget;
+    private Path spillDirectory;
+    private final AtomicInteger nextRun = new AtomicInteger();
+    // guarded by this
+    private final List<Path> runs = new ArrayList<>();
+    private final List<Path> obsoleteRuns = new ArrayList<>();
+    // one flush at a time, so two compactions never merge the same runs
+    private final Object flushLock = new Object();
+
+    /**
+     * @param spillDirectory           where runs go, or null for a temporary directory
+     * @param memoryBudget             roughly how many bytes of counts to keep in memory before spilling
+     */
+    public ShardedWordCounts(Path spillDirectory, long memoryBudget) {
+        this.spillDirectory = spillDirectory;
+        this.memoryBudget = memoryBudget;
+        this.shardBudget = Math.max(1, memoryBudget / SHARDS);
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    public void add(String word, long count) {
+        Shard shard = shards[(word.hashCode() ^ (word.hashCode() >>> 16)) & (SHARDS - 1)];
+        synchronized (shard) {
+            shard.seen.add(fingerprint(word));
+            int before = shard.counter.size();
+            shard.counter.add(word, count);
+            if (shard.counter.size() > before) {
+                shard.bytes += BYTES_PER_WORD + word.length();
+                if (shard.bytes > shardBudget) {
+                    spill(shard);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a page's counts
+     *
+     * @param pageWords                the words counted on one page
+     */
+    public void addAll(WordCounter pageWords) {
+        pageWords.forEach(this::add);
+    }
+
+    /**
+     * @return                         the number of distinct words counted so far, in memory or spilled
+     */
+    public long distinctWords() {
+        long distinct = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                distinct += shard.seen.size();
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Writes the shard's words out as a run and empties it; the caller holds the shard's lock. If the run cannot be
+     * written the words stay in memory, and we try again on the next spill.
+     */
+    private void spill(Shard shard) {
+        if (shard.counter.size() == 0) {
+            return;
+        }
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(shard.counter.size());
+        shard.counter.forEach((word, count) -> entries.add(Map.entry(word, count)));
+        entries.sort(Map.Entry.comparingByKey());
+
+        try {
+            Path run = newRun(RUN_PREFIX);
+            writeRun(run, entries);
+            synchronized (this) {
+                runs.add(run);
+            }
+            shard.counter = new WordCounter();
+            shard.bytes = 0;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private Path newRun(String prefix) throws IOException {
+        if (spillDirectory == null) {
+            spillDirectory = Files.createTempDirectory("word-counts");
+        }
+        Files.createDirectories(spillDirectory);
+        return spillDirectory.resolve(prefix + nextRun.getAndIncrement() + RUN_SUFFIX);
+    }
+
+    /**
+     * Writes a run to a temporary file first, so a run file that exists is always complete
+     */
+    private static void writeRun(Path run, List<Map.Entry<String, Long>> entries) throws IOException {
+        Path temporary = run.resolveSibling(run.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> entry : entries) {
+                writer.write(entry.getKey() + ":" + entry.getValue() + "\n");
+            }
+        }
+        Files.move(temporary, run, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * The counts up to one moment: the words the shards held then, and the runs that were written by then
+     */
+    public static final class Seal {
+        private final List<WordCounter> counters;
+        private final List<Path> runs;
+
+        private Seal(List<WordCounter> counters, List<Path> runs) {
+            this.counters = counters;
+            this.runs = runs;
+        }
+    }
+
+    /**
+     * Takes the shards' words as they are, without any I/O; anything counted from here on goes into fresh counters and
+     * later runs. flush(Seal) then writes exactly these counts out. The caller keeps add() from running meanwhile, or
+     * the seal may miss a word or two.
+     *
+     * @return                         the counts so far
+     */
+    public Seal seal() {
+        List<WordCounter> counters = new ArrayList<>();
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                if (shard.counter.size() > 0) {
+                    counters.add(shard.counter);
+                    shard.counter = new WordCounter();
+                    shard.bytes = 0;
+                }
+            }
+        }
+        synchronized (this) {
+            return new Seal(counters, new ArrayList<>(runs));
+        }
+    }
+
+    /**
+     * Writes everything counted so far out; see flush(Seal)
+     *
+     * @return                         the runs that now hold every count
+     */
+    public List<Path> flush() throws IOException {
+        return flush(seal());
+    }
+
+    /**
+     * Writes a seal's words as one run, and merges runs of the seal of about the same size once there are TIER_FAN_IN
+     * of them. Counting goes on meanwhile; only runs of the seal are merged, so what came after stays apart. The runs
+     * merged away are only deleted by commit(), once nothing refers to them any more.
+     *
+     * @param seal                     the counts to write out
+     * @return                         the runs that now hold the seal's counts, and nothing else
+     */
+    public List<Path> flush(Seal seal) throws IOException {
+        synchronized (flushLock) {
+            List<Path> sealedRuns = new ArrayList<>(seal.runs);
+            if (!seal.counters.isEmpty()) {
+                // shards hold different words, so the run is just their words together, sorted
+                List<Map.Entry<String, Long>> entries = new ArrayList<>();
+                for (WordCounter counter : seal.counters) {
+                    counter.forEach((word, count) -> entries.add(Map.entry(word, count)));
+                }
+                entries.sort(Map.Entry.comparingByKey());
+                try {
+                    Path run = newRun(RUN_PREFIX);
+                    writeRun(run, entries);
+                    synchronized (this) {
+                        runs.add(run);
+                    }
+                    sealedRuns.add(run);
+                } catch (IOException e) {
+                    // put the words back, so the next flush can try again
+                    for (Map.Entry<String, Long> entry : entries) {
+                        add(entry.getKey(), entry.getValue());
+                    }
+                    throw e;
+                }
+            }
+            compact(sealedRuns);
+            return sealedRuns;
+        }
+    }
+
+    /**
+     * Merges the runs of any tier that has TIER_FAN_IN of them, until none has. The merging happens without this lock,
+     * so shards can still spill meanwhile.
+     *
+     * @param candidates               the runs that may be merged; updated to the runs that hold their counts after
+     */
+    private void compact(List<Path> candidates) throws IOException {
+        while (true) {
+            Map<Integer, List<Path>> tiers = new HashMap<>();
+            List<Path> merged = null;
+            for (Path run : candidates) {
+                List<Path> tier = tiers.computeIfAbsent(tierOf(Files.size(run)), size -> new ArrayList<>());
+                tier.add(run);
+                if (tier.size() == TIER_FAN_IN) {
+                    merged = tier;
+                    break;
+                }
+            }
+            if (merged == null) {
+                return;
+            }
+
+            Path run = newRun(RUN_PREFIX);
+            Path temporary = run.resolveSibling(run.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                mergeByWord(merged, (word, count) -> writeLine(writer, word, count));
+            }
+            Files.move(temporary, run, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            candidates.removeAll(merged);
+            candidates.add(run);
+            synchronized (this) {
+                runs.removeAll(merged);
+                runs.add(run);
+                obsoleteRuns.addAll(merged);
+            }
+        }
+    }
+
+    /**
+     * The tier of a run of the given size: tier t holds runs of TIER_FAN_IN^t up to TIER_FAN_IN^(t + 1) kilobytes
+     */
+    private static int tierOf(long bytes) {
+        int tier = 0;
+        for (long size = bytes >> 10; size >= TIER_FAN_IN; size /= TIER_FAN_IN) {
+            tier++;
+        }
+        return tier;
+    }
+
+    /**
+     * Deletes the runs the last flush merged away; call it once a checkpoint naming the new runs is safely written
+     */
+    public synchronized void commit() {
+        for (Path run : obsoleteRuns) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        obsoleteRuns.clear();
+    }
+
+    /**
+     * Picks up the runs of an earlier crawl. Runs in the spill directory that are not in the list were written after
+     * the checkpoint that named these, so they are deleted; the pages they came from will be fetched again.
+     *
+     * @param runFiles                 the file names of the runs, relative to the spill directory
+     */
+    public synchronized void resume(List<String> runFiles) throws IOException {
+        int highestRun = -1;
+        for (String runFile : runFiles) {
+            Path run = spillDirectory.resolve(runFile);
+            runs.add(run);
+            highestRun = Math.max(highestRun, runNumber(runFile));
+            try (BufferedReader reader = Files.newBufferedReader(run, StandardCharsets.UTF_8)) {
+                String nextLine;
+                while ((nextLine = reader.readLine()) != null) {
+                    String word = nextLine.substring(0, nextLine.lastIndexOf(':'));
+                    Shard shard = shards[(word.hashCode() ^ (word.hashCode() >>> 16)) & (SHARDS - 1)];
+                    synchronized (shard) {
+                        shard.seen.add(fingerprint(word));
+                    }
+                }
+            }
+        }
+
+        if (Files.isDirectory(spillDirectory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(spillDirectory)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    if (!runFiles.contains(name)) {
+                        highestRun = Math.max(highestRun, runNumber(name));
+                        Files.delete(file);
+                    }
+                }
+            }
+        }
+        nextRun.set(highestRun + 1);
+    }
+
+    private static int runNumber(String runFile) {
+        String digits = runFile.replaceAll("[^0-9]", "");
+        return digits.isEmpty() ? -1 : Integer.parseInt(digits);
+    }
+
+    /**
+     * Writes the final word:count file, most frequent first. Counts are merged by word from the runs, then sorted by
+     * count in chunks that fit the memory budget, and those chunks are merged again.
+     *
+     * @param output                   the file to write
+     */
+    public void writeByCount(Path output) throws IOException {
+        List<Path> wordRuns = flush();
+        Comparator<Map.Entry<String, Long>> byCount = (entry1, entry2) -> entry2.getValue().equals(entry1.getValue())
+                ? entry1.getKey().compareTo(entry2.getKey())
+                : Long.compare(entry2.getValue(), entry1.getValue());
+
+        long chunkSize = Math.max(1024, memoryBudget / BYTES_PER_WORD);
+        List<Map.Entry<String, Long>> chunk = new ArrayList<>();
+        List<Path> countRuns = new ArrayList<>();
+        mergeByWord(wordRuns, (word, count) -> {
+            chunk.add(Map.entry(word, count));
+            if (chunk.size() >= chunkSize) {
+                chunk.sort(byCount);
+                Path run = newRun("count-");
+                writeRun(run, chunk);
+                countRuns.add(run);
+                chunk.clear();
+            }
+        });
+        chunk.sort(byCount);
+
+        if (countRuns.isEmpty()) {
+            writeRun(output, chunk);
+            return;
+        }
+        if (!chunk.isEmpty()) {
+            Path run = newRun("count-");
+            writeRun(run, chunk);
+            countRuns.add(run);
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            merge(countRuns, byCount, false, (word, count) -> writeLine(writer, word, count));
+        } finally {
+            for (Path run : countRuns) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    /**
+     * Receives merged words and counts; unlike WordCounter.Visitor it may fail with an IOException
+     */
+    private interface RunVisitor {
+        void visit(String word, long count) throws IOException;
+    }
+
+    private static void writeLine(BufferedWriter writer, String word, long count) throws IOException {
+        writer.write(word + ":" + count + "\n");
+    }
+
+    /**
+     * Merges runs sorted by word, handing on each word once with its counts added up. More runs than we merge at
+     * once are merged in rounds, through temporary runs.
+     */
+    private void mergeByWord(List<Path> runs, RunVisitor visitor) throws IOException {
+        List<Path> inputs = new ArrayList<>(runs);
+        List<Path> temporaryRuns = new ArrayList<>();
+        try {
+            while (inputs.size() > MAX_MERGE_FAN_IN) {
+                List<Path> round = new ArrayList<>(inputs.subList(0, MAX_MERGE_FAN_IN));
+                inputs.subList(0, MAX_MERGE_FAN_IN).clear();
+                Path run = newRun("merge-");
+                try (BufferedWriter writer = Files.newBufferedWriter(run, StandardCharsets.UTF_8)) {
+                    merge(round, Map.Entry.comparingByKey(), true, (word, count) -> writeLine(writer, word, count));
+                }
+                temporaryRuns.add(run);
+                inputs.add(run);
+            }
+            merge(inputs, Map.Entry.comparingByKey(), true, visitor);
+        } finally {
+            for (Path run : temporaryRuns) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    /**
+     * The next line of a run being merged
+     */
+    private static class RunReader {
+        final BufferedReader reader;
+        Map.Entry<String, Long> current;
+
+        RunReader(Path run) throws IOException {
+            this.reader = Files.newBufferedReader(run, StandardCharsets.UTF_8);
+        }
+
+        boolean advance() throws IOException {
+            String nextLine = reader.readLine();
+            if (nextLine == null) {
+                reader.close();
+                return false;
+            }
+            int separator = nextLine.lastIndexOf(':');
+            current = Map.entry(nextLine.substring(0, separator), Long.parseLong(nextLine.substring(separator + 1)));
+            return true;
+        }
+    }
+
+    /**
+     * K-way merges runs that are each sorted by order, optionally adding up the counts of equal words
+     */
+    private static void merge(List<Path> runs, Comparator<Map.Entry<String, Long>> order, boolean sum, RunVisitor visitor)
+            throws IOException {
+        PriorityQueue<RunReader> heap = new PriorityQueue<>(Math.max(1, runs.size()),
+                (reader1, reader2) -> order.compare(reader1.current, reader2.current));
+        try {
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run);
+                if (reader.advance()) {
+                    heap.add(reader);
+                }
+            }
+
+            while (!heap.isEmpty()) {
+                RunReader reader = heap.poll();
+                String word = reader.current.getKey();
+                long count = reader.current.getValue();
+                if (reader.advance()) {
+                    heap.add(reader);
+                }
+                while (sum && !heap.isEmpty() && heap.peek().current.getKey().equals(word)) {
+                    RunReader same = heap.poll();
+                    count += same.current.getValue();
+                    if (same.advance()) {
+                        heap.add(same);
+                    }
+                }
+                visitor.visit(word, count);
+            }
+        } finally {
+            for (RunReader reader : heap) {
+                reader.reader.close();
+            }
+        }
+    }
+
+    /**
+     * A 64-bit FNV-1a hash; two words colliding among a few million is vanishingly unlikely
+     */
+    private static long fingerprint(String word) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < word.length(); i++) {
+            hash = (hash ^ word.charAt(i)) * 0x100000001b3L;
+        }
+        // 0 marks an empty slot
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * An open-addressing set of fingerprints, 8 bytes a word
+     */
+    private static class FingerprintSet {
+        private long[] slots = new long[64];
+        private int size = 0;
+
+        void add(long fingerprint) {
+            int mask = slots.length - 1;
+            int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+            while (slots[slot] != 0) {
+                if (slots[slot] == fingerprint) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = fingerprint;
+            if (++size * 2 > slots.length) {
+                long[] oldSlots = slots;
+                slots = new long[oldSlots.length * 2];
+                size = 0;
+                for (long oldFingerprint : oldSlots) {
+                    if (oldFingerprint != 0) {
+                        add(oldFingerprint);
+                    }
+                }
+            }
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
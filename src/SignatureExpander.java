@@ -0,0 +1,136 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Turns anagrams found over letter signatures back into real words. The search only sees the best word of each
+ * signature, so each anagram it emits stands for every combination of words with the same letters.
+ */
+public class SignatureExpander implements AnagramSink {
+    private final AnagramSink sink;
+    // follows the words picked so far; it has nothing pushed between anagrams
+    private final Scorer scorer;
+    // the words picked for each group so far; reused across anagrams since the sink copies what it keeps
+    private FrequencyContainer[] chosen = new FrequencyContainer[8];
+    private int[] chosenIds = new int[8];
+
+    public SignatureExpander(AnagramSink sink) {
+        this(sink, AnagramMe.defaultScorer());
+    }
+
+    /**
+     * @param sink                     where the expanded anagrams go
+     * @param scorer                   the scorer of the search; only its model is used
+     */
+    public SignatureExpander(AnagramSink sink, Scorer scorer) {
+        this.sink = sink;
+        this.scorer = scorer.empty();
+    }
+
+    @Override
+    public void accept(List<FrequencyContainer> anagram) {
+        boolean hasAlternatives = false;
+        for (FrequencyContainer container : anagram) {
+            hasAlternatives |= !container.sameLetters.isEmpty();
+        }
+        if (!hasAlternatives) {
+            sink.accept(anagram);
+            return;
+        }
+        expandAll(anagram, null);
+    }
+
+    @Override
+    public void acceptIds(int[] wordIds, int length, List<FrequencyContainer> dict, double score) {
+        boolean hasAlternatives = false;
+        for (int i = 0; i < length; i++) {
+            hasAlternatives |= !dict.get(wordIds[i]).sameLetters.isEmpty();
+        }
+        if (!hasAlternatives) {
+            sink.acceptIds(wordIds, length, dict, score);
+            return;
+        }
+
+        List<FrequencyContainer> signatures = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            signatures.add(dict.get(wordIds[i]));
+        }
+        expandAll(signatures, dict);
+    }
+
+    /**
+     * Expands every combination of group members, handing each one on as ids into dict, or as a list if dict is null
+     */
+    private void expandAll(List<FrequencyContainer> signatures, List<FrequencyContainer> dict) {
+        if (chosen.length < signatures.size()) {
+            chosen = new FrequencyContainer[signatures.size()];
+            chosenIds = new int[signatures.size()];
+        }
+        expand(signatures, dict, 0, 0);
+    }
+
+    /**
+     * Recursively picks a word from each signature group of the anagram
+     *
+     * @param signatures               the best word of each group, in search order
+     * @param dict                     the dictionary the ids index into, or null to hand on lists
+     * @param position                 the group we are choosing a word for
+     * @param previousMember           the member chosen for the previous group
+     */
+    private void expand(List<FrequencyContainer> signatures, List<FrequencyContainer> dict, int position, int previousMember) {
+        if (position == signatures.size()) {
+            if (dict == null) {
+                sink.accept(new ArrayList<>(Arrays.asList(chosen).subList(0, position)));
+            }
+            else {
+                for (int i = 0; i < position; i++) {
+                    chosenIds[i] = chosen[i].id;
+                }
+                sink.acceptIds(chosenIds, position, dict, scorer.score());
+            }
+            return;
+        }
+
+        FrequencyContainer signature = signatures.get(position);
+        // a repeated group sits next to itself; choosing members in non-decreasing order keeps each multiset once
+        int firstMember = position > 0 && signatures.get(position - 1) == signature ? previousMember : 0;
+
+        for (int member = firstMember; member <= signature.sameLetters.size() && !sink.isCancelled(); member++) {
+            FrequencyContainer word = member == 0 ? signature : signature.sameLetters.get(member - 1);
+            scorer.push(word);
+            // members are sorted best first, so once one cannot beat the threshold no later one can
+            if (bestCompletion(signatures, position + 1) <= sink.threshold()) {
+                scorer.pop(word);
+                break;
+            }
+
+            chosen[position] = word;
+            expand(signatures, dict, position + 1, member);
+            scorer.pop(word);
+        }
+    }
+
+    /**
+     * @return                         the score of the words picked so far, with the best member of every later group
+     */
+    private double bestCompletion(List<FrequencyContainer> signatures, int position) {
+        for (int i = position; i < signatures.size(); i++) {
+            scorer.push(signatures.get(i));
+        }
+        double score = scorer.score();
+        for (int i = signatures.size() - 1; i >= position; i--) {
+            scorer.pop(signatures.get(i));
+        }
+        return score;
+    }
+
+    @Override
+    public double threshold() {
+        return sink.threshold();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return sink.isCancelled();
+    }
+}
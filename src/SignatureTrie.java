@@ -0,0 +1,145 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The signature dict compiled into a trie over each signature's letters, in slot order (see FrequencyMap.indexOf).
+ * Instead of scanning a list of words for the ones that fit the remaining letters, we walk the trie against them: a
+ * branch is only entered while the pool still has its letter, so only words the pool can spell are ever reached, and
+ * the letters a group of signatures shares are checked once for all of them.
+ *
+ * The search still takes words best first, so the walk hands back exactly what filterDict would: the words that fit,
+ * from a given id on, in id order. Every node knows the highest id below it, so branches holding only words the
+ * search has moved past are skipped whole.
+ */
+public class SignatureTrie {
+    private static class Node {
+        // the slots of the children, ascending, and the children themselves
+        int[] slots = new int[0];
+        Node[] children = new Node[0];
+        // bit i is set if there is a child for slot i
+        int childMask = 0;
+        // the signature spelled out by the path to this node, if any
+        FrequencyContainer word;
+        // the highest id of any word at or below this node
+        int maxId = -1;
+
+        Node child(int slot) {
+            int position = Arrays.binarySearch(slots, slot);
+            if (position >= 0) {
+                return children[position];
+            }
+            position = -position - 1;
+            int[] newSlots = new int[slots.length + 1];
+            System.arraycopy(slots, 0, newSlots, 0, position);
+            newSlots[position] = slot;
+            System.arraycopy(slots, position, newSlots, position + 1, slots.length - position);
+            slots = newSlots;
+            children = Arrays.copyOf(children, children.length + 1);
+            System.arraycopy(children, position, children, position + 1, children.length - position - 1);
+            children[position] = new Node();
+            childMask |= 1 << slot;
+            return children[position];
+        }
+    }
+
+    private final Node root = new Node();
+    private final List<FrequencyContainer> dict;
+    private int nodeCount = 1;
+
+    /**
+     * @param signatureDict            the best word of each signature, with ids set
+     * @param dict                     the full dict the ids index into, sorted best first
+     */
+    public SignatureTrie(List<FrequencyContainer> signatureDict, List<FrequencyContainer> dict) {
+        this.dict = dict;
+        for (FrequencyContainer container : signatureDict) {
+            add(container);
+        }
+    }
+
+    private void add(FrequencyContainer container) {
+        Node node = root;
+        node.maxId = Math.max(node.maxId, container.id);
+        for (int slot = 0; slot < FrequencyMap.ALPHABET_SIZE; slot++) {
+            for (int count = container.letters.countAt(slot); count > 0; count--) {
+                Node parent = node;
+                int children = parent.children.length;
+                node = parent.child(slot);
+                nodeCount += parent.children.length - children;
+                node.maxId = Math.max(node.maxId, container.id);
+            }
+        }
+        // signatures are unique, so no two words end at the same node
+        node.word = container;
+    }
+
+    /**
+     * The ids a walk has found so far, and the number of nodes it looked at
+     */
+    private static class Walk {
+        int[] ids = new int[16];
+        int size = 0;
+        int nodes = 0;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    /**
+     * Finds the signatures the letters can spell, like AnagramMe.filterDict over the signature dict from minimumId on
+     *
+     * @param frequencyMap             the available characters (restored before returning)
+     * @param minimumId                the lowest id to return
+     * @param stats                    the stats of the query; every trie node looked at counts as a word scanned
+     * @return                         the words that fit, best first
+     */
+    public List<FrequencyContainer> fitting(FrequencyMap frequencyMap, int minimumId, SearchStats stats) {
+        Walk walk = new Walk();
+        collect(root, frequencyMap, minimumId, walk);
+        // the walk goes letter by letter, so put the words back in the dict's order
+        Arrays.sort(walk.ids, 0, walk.size);
+
+        List<FrequencyContainer> fitting = new ArrayList<>(walk.size);
+        for (int i = 0; i < walk.size; i++) {
+            fitting.add(dict.get(walk.ids[i]));
+        }
+        stats.filtered(walk.nodes, walk.size);
+        return fitting;
+    }
+
+    /**
+     * Follows the letters below a node that the pool still has, collecting the words on the way
+     */
+    private static void collect(Node node, FrequencyMap frequencyMap, int minimumId, Walk walk) {
+        if ((node.childMask & frequencyMap.mask()) == 0) {
+            return;
+        }
+        for (int i = 0; i < node.slots.length; i++) {
+            int slot = node.slots[i];
+            Node child = node.children[i];
+            if (frequencyMap.countAt(slot) == 0 || child.maxId < minimumId) {
+                continue;
+            }
+            walk.nodes++;
+
+            if (child.word != null && child.word.id >= minimumId) {
+                walk.add(child.word.id);
+            }
+            frequencyMap.decrementAt(slot);
+            collect(child, frequencyMap, minimumId, walk);
+            frequencyMap.incrementAt(slot);
+        }
+    }
+
+    /**
+     * @return                         the number of nodes in the trie, the root included
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+}
@@ -0,0 +1,127 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the filtered dictionary of recent subproblems. A subproblem is fully described by the letters left and
+ * the id of the first word it may still use: the search only ever narrows the dictionary, so the filtered dictionary
+ * is every signature word from that id onwards that fits the letters. Different paths through the search that leave
+ * the same letters at the same frontier then share one filterDict pass.
+ *
+ * The cache is bounded by the total number of words held across its entries and evicts the least recently used.
+ */
+public class SubproblemCache {
+    private final long maxWords;
+    private final LinkedHashMap<Key, List<FrequencyContainer>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long words = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    public SubproblemCache(long maxWords) {
+        if (maxWords <= 0) {
+            throw new IllegalArgumentException("maxWords must be positive, got " + maxWords);
+        }
+        this.maxWords = maxWords;
+    }
+
+    /**
+     * Gets the filtered dictionary of a subproblem, filtering and storing it on a miss
+     *
+     * @param frequencyMap             the letters left; copied if it becomes a key
+     * @param frontier                 the id of the first word the subproblem may use
+     * @param filter                   computes the filtered dictionary on a miss
+     * @return                         the filtered dictionary, which callers must not modify
+     */
+    public List<FrequencyContainer> get(FrequencyMap frequencyMap, int frontier, Supplier<List<FrequencyContainer>> filter) {
+        Key key = new Key(frequencyMap, frontier);
+        synchronized (this) {
+            List<FrequencyContainer> filteredDict = entries.get(key);
+            if (filteredDict != null) {
+                hits++;
+                return filteredDict;
+            }
+            misses++;
+        }
+
+        // we filter outside the lock; two threads racing on the same key just both do the work
+        List<FrequencyContainer> filteredDict = filter.get();
+        if (filteredDict.size() <= maxWords) {
+            put(new Key(frequencyMap.copy(), frontier), filteredDict);
+        }
+        return filteredDict;
+    }
+
+    private synchronized void put(Key key, List<FrequencyContainer> filteredDict) {
+        List<FrequencyContainer> previous = entries.put(key, filteredDict);
+        words += filteredDict.size() - (previous == null ? 0 : previous.size());
+
+        Iterator<Map.Entry<Key, List<FrequencyContainer>>> eldest = entries.entrySet().iterator();
+        while (words > maxWords && eldest.hasNext()) {
+            words -= eldest.next().getValue().size();
+            eldest.remove();
+        }
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * @return                         the number of subproblems currently cached
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return                         the number of words held across all cached filtered dictionaries
+     */
+    public synchronized long words() {
+        return words;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "{entries: " + entries.size() + ", words: " + words + ", hits: " + hits + ", misses: " + misses + "}";
+    }
+
+    /**
+     * The canonical encoding of a subproblem: its letter counts and its frontier
+     */
+    private static final class Key {
+        private final FrequencyMap frequencyMap;
+        private final int frontier;
+        private final int hash;
+
+        Key(FrequencyMap frequencyMap, int frontier) {
+            this.frequencyMap = frequencyMap;
+            this.frontier = frontier;
+            this.hash = 31 * frequencyMap.hashCode() + frontier;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return frontier == key.frontier && frequencyMap.equals(key.frequencyMap);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
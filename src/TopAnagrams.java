@@ -0,0 +1,150 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps only the best K anagrams seen so far in a bounded heap, so memory stays O(K) however many anagrams a name has.
+ * Anagrams from a search arrive already scored; anagrams handed in as lists are scored once, when they are accepted.
+ */
+public class TopAnagrams implements AnagramSink {
+    private static final int INITIAL_HEAP_SIZE = 64;
+    private final int capacity;
+    // scores anagrams handed in as lists
+    private final Scorer scorer;
+    // the worst kept anagram sits on top, so it is the one we compare against and evict
+    private final PriorityQueue<ScoredAnagram> heap;
+    private long count = 0;
+    // the stats of the search filling this collector
+    private final SearchStats stats = new SearchStats();
+    // where time spent sorting is reported, if anywhere
+    AnagramMetrics metrics;
+    // false if the search ran out of budget before it was done, in which case anagrams of more than
+    // completeWordCount words may be missing
+    private boolean complete = true;
+    private int completeWordCount = Integer.MAX_VALUE;
+
+    public TopAnagrams(int capacity) {
+        this(capacity, AnagramMe.defaultScorer());
+    }
+
+    public TopAnagrams(int capacity, Scorer scorer) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive, got " + capacity);
+        }
+        this.capacity = capacity;
+        this.scorer = scorer;
+        // the heap grows as anagrams come in; sizing it to the capacity up front would allocate for anagrams that may
+        // never be found
+        this.heap = new PriorityQueue<>(Math.min(capacity, INITIAL_HEAP_SIZE), (anagram1, anagram2) -> ScoredAnagram.compareBestFirst(anagram2, anagram1));
+    }
+
+    @Override
+    public void accept(List<FrequencyContainer> anagram) {
+        stats.anagrams++;
+        offer(new ScoredAnagram(anagram, scorer.scoreOf(anagram), count++));
+    }
+
+    @Override
+    public void acceptIds(int[] wordIds, int length, List<FrequencyContainer> dict, double score) {
+        stats.anagrams++;
+        long sequence = count++;
+
+        // most anagrams do not make it in, so only the ones that do get their ids copied out
+        if (heap.size() < capacity || score > heap.peek().score) {
+            offer(new ScoredAnagram(Arrays.copyOf(wordIds, length), dict, score, sequence));
+        }
+    }
+
+    @Override
+    public double threshold() {
+        // until we are full, any anagram gets in
+        return heap.size() < capacity ? Double.NEGATIVE_INFINITY : heap.peek().score;
+    }
+
+    /**
+     * Adds an already scored anagram, evicting the worst kept one if we are full
+     *
+     * @param anagram                  the anagram to add
+     */
+    public void offer(ScoredAnagram anagram) {
+        if (heap.size() < capacity) {
+            heap.add(anagram);
+        }
+        else if (ScoredAnagram.compareBestFirst(anagram, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(anagram);
+        }
+    }
+
+    /**
+     * Folds another collector's anagrams into this one
+     *
+     * @param other                    the collector to merge in
+     */
+    public void merge(TopAnagrams other) {
+        for (ScoredAnagram anagram : other.heap) {
+            offer(anagram);
+        }
+        count += other.count;
+        stats.merge(other.stats);
+        complete &= other.complete;
+        completeWordCount = Math.min(completeWordCount, other.completeWordCount);
+    }
+
+    /**
+     * Records that the search stopped early
+     *
+     * @param completeWordCount        the most words an anagram can have and still be sure to have been considered
+     */
+    void markIncomplete(int completeWordCount) {
+        this.complete = false;
+        this.completeWordCount = completeWordCount;
+    }
+
+    /**
+     * @return                         true unless a budgeted search ran out before it was done
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return                         the most words an anagram can have and still be sure to have been considered;
+     *                                 unlimited for a complete search
+     */
+    public int getCompleteWordCount() {
+        return completeWordCount;
+    }
+
+    /**
+     * @return                         the total number of anagrams offered, kept or not
+     */
+    public long count() {
+        return count;
+    }
+
+    public int size() {
+        return heap.size();
+    }
+
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return                         the kept anagrams, best first
+     */
+    public List<ScoredAnagram> toSortedList() {
+        long start = System.nanoTime();
+        List<ScoredAnagram> sorted = new ArrayList<>(heap);
+        sorted.sort(ScoredAnagram::compareBestFirst);
+
+        long sortNanos = System.nanoTime() - start;
+        stats.sortNanos += sortNanos;
+        if (metrics != null) {
+            metrics.recordSort(sortNanos);
+        }
+        return sorted;
+    }
+}
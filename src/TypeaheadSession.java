@@ -0,0 +1,198 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Anagrams a name while it is being typed. Every keystroke changes the letters by one or two, so instead of starting
+ * over, a session keeps what the last query built and moves it to the new letters:
+ *
+ * - the signature words that fit the letters. When letters are taken away, only those words can drop out, so we
+ *   filter them again. When letters are added, the only new words are the ones that now need more of an added letter
+ *   than there used to be, and AnagramMe keeps an index of those by letter and count.
+ * - the last few complete results, so backspacing to a name we already answered costs nothing.
+ *
+ * A session is meant for one user typing, so it is not thread safe.
+ */
+public class TypeaheadSession {
+    // the complete results we keep for backspacing
+    private static final int RECENT_RESULTS = 16;
+
+    private final AnagramMe anagrammer;
+    private final Map<String, TopAnagrams> recentResults = new LinkedHashMap<String, TopAnagrams>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TopAnagrams> eldest) {
+            return size() > RECENT_RESULTS;
+        }
+    };
+
+    // the letters typed so far, and the signature words that fit them, best first
+    private FrequencyMap letters = new FrequencyMap();
+    private List<FrequencyContainer> fittingDict = new ArrayList<>();
+    // the words looked at to keep fittingDict up to date, over the session's life
+    private long wordsScanned = 0;
+
+    public TypeaheadSession(AnagramMe anagrammer) {
+        this.anagrammer = anagrammer;
+    }
+
+    /**
+     * Moves the session to a name, typically the last one with a character added or taken away
+     *
+     * @param name                     the name as typed so far
+     */
+    public void setName(String name) {
+        moveTo(anagrammer.generateFrequencyMap(name));
+    }
+
+    /**
+     * @param characters               the characters to add to the letters
+     */
+    public void addLetters(String characters) {
+        FrequencyMap target = letters.copy();
+        target.add(anagrammer.generateFrequencyMap(characters));
+        moveTo(target);
+    }
+
+    /**
+     * @param characters               the characters to take away from the letters
+     * @throws IllegalArgumentException if the letters do not hold them
+     */
+    public void removeLetters(String characters) {
+        FrequencyMap removed = anagrammer.generateFrequencyMap(characters);
+        if (!letters.contains(removed)) {
+            throw new IllegalArgumentException("The letters " + letters + " do not hold " + characters);
+        }
+        FrequencyMap target = letters.copy();
+        target.subtract(removed);
+        moveTo(target);
+    }
+
+    private void moveTo(FrequencyMap target) {
+        // take away first, so whatever fits the letters in between fits the target too
+        FrequencyMap between = letters.copy();
+        boolean grows = false;
+        for (int slot = 0; slot < FrequencyMap.ALPHABET_SIZE; slot++) {
+            while (between.countAt(slot) > target.countAt(slot)) {
+                between.decrementAt(slot);
+            }
+            grows |= target.countAt(slot) > between.countAt(slot);
+        }
+
+        if (!between.equals(letters)) {
+            wordsScanned += fittingDict.size();
+            fittingDict = anagrammer.filterDict(fittingDict, between);
+        }
+        if (grows) {
+            fittingDict = merge(fittingDict, newlyFitting(between, target));
+        }
+        letters = target;
+    }
+
+    /**
+     * Finds the words that fit the target but not the letters it grew from. Such a word needs more of some added
+     * letter than there was, so we only look through the words that have that many.
+     */
+    private List<FrequencyContainer> newlyFitting(FrequencyMap from, FrequencyMap target) {
+        int[] ids = new int[16];
+        int size = 0;
+        for (int slot = 0; slot < FrequencyMap.ALPHABET_SIZE; slot++) {
+            if (target.countAt(slot) <= from.countAt(slot)) {
+                continue;
+            }
+            List<FrequencyContainer> candidates = anagrammer.signaturesWithAtLeast(slot, from.countAt(slot) + 1);
+            wordsScanned += candidates.size();
+            for (FrequencyContainer container : candidates) {
+                if (container.length <= target.size() && target.contains(container.letters)) {
+                    if (size == ids.length) {
+                        ids = Arrays.copyOf(ids, size * 2);
+                    }
+                    ids[size++] = container.id;
+                }
+            }
+        }
+
+        // a word can need more of two added letters, so it may have come up twice
+        Arrays.sort(ids, 0, size);
+        List<FrequencyContainer> newlyFitting = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) {
+                newlyFitting.add(anagrammer.dict.get(ids[i]));
+            }
+        }
+        return newlyFitting;
+    }
+
+    /**
+     * Merges two lists of signature words, both best first, into one best first
+     */
+    private static List<FrequencyContainer> merge(List<FrequencyContainer> words1, List<FrequencyContainer> words2) {
+        List<FrequencyContainer> merged = new ArrayList<>(words1.size() + words2.size());
+        int i = 0;
+        int j = 0;
+        while (i < words1.size() || j < words2.size()) {
+            if (j == words2.size() || (i < words1.size() && words1.get(i).id < words2.get(j).id)) {
+                merged.add(words1.get(i++));
+            }
+            else {
+                merged.add(words2.get(j++));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Gets the best anagrams of the letters so far
+     *
+     * @param count                    the number of anagrams to keep
+     * @return                         the collector holding the best anagrams
+     */
+    public TopAnagrams findTopAnagrams(int count) {
+        return findTopAnagrams(count, null);
+    }
+
+    /**
+     * Gets the best anagrams of the letters so far that can be found within a budget; see
+     * AnagramMe.findTopAnagrams(String, int, SearchBudget)
+     *
+     * @param count                    the number of anagrams to keep
+     * @param budget                   how long the search may run, or null for no limit
+     * @return                         the collector holding the best anagrams found
+     */
+    public TopAnagrams findTopAnagrams(int count, SearchBudget budget) {
+        String key = anagrammer.getScorer().name() + "|" + count + "|" + letters;
+        TopAnagrams topAnagrams = recentResults.get(key);
+        if (topAnagrams != null) {
+            return topAnagrams;
+        }
+
+        topAnagrams = anagrammer.findTopAnagrams(letters, count, fittingDict, budget);
+        // a cut-off result would keep answering after a later query had time to finish
+        if (topAnagrams.isComplete()) {
+            recentResults.put(key, topAnagrams);
+        }
+        return topAnagrams;
+    }
+
+    /**
+     * @return                         the letters typed so far
+     */
+    public FrequencyMap getLetters() {
+        return letters.copy();
+    }
+
+    /**
+     * @return                         the number of signature words that fit the letters so far
+     */
+    public int fittingWords() {
+        return fittingDict.size();
+    }
+
+    /**
+     * @return                         the words looked at to keep the fitting words up to date, over the session's life
+     */
+    public long wordsScanned() {
+        return wordsScanned;
+    }
+}
@@ -1,11 +1,9 @@
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
 
 /**
@@ -13,6 +11,11 @@ import java.util.*;
  * the idea is that frequency on Urban Dictionary should somehow correlate with funniness.
  */
 public class UrbanDictionaryScraper {
+    private static final int CONCURRENCY = 64;
+    // be polite: Urban Dictionary is one host, so this is what it actually sees
+    private static final int PER_HOST_CONCURRENCY = 8;
+    private static final long CHECKPOINT_INTERVAL = 500;
+
     /**
      * The master function to scrape Urban Dictionary
      *
@@ -20,120 +23,76 @@ public class UrbanDictionaryScraper {
      * @param numberWordsToCollect                  the number of unique words we want to collect
      */
     public static void scrapeUrbanDictionary(String startingUrl, Integer numberWordsToCollect, String saveLocation) {
-        Queue<String> urlQueue = new LinkedList<>();
-        Map<String, Integer> frequencyMap = new HashMap<>();
-        Set<String> travelledUrls = new HashSet<>();
-
-        urlQueue.add(startingUrl);
-
-        // iterates through the queue, finding more links and words
-        while (!urlQueue.isEmpty() && (frequencyMap.size() < numberWordsToCollect)) {
-            String nextUrl = urlQueue.remove();
-            try {
-                parsePage(nextUrl, frequencyMap, urlQueue, travelledUrls);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-
-            System.out.println(nextUrl);
-            System.out.println("Map Size: " + frequencyMap.size());
-        }
-
-        try {
-            saveFrequencyMap(frequencyMap, saveLocation);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * Saves the frequency map to a file
-     *
-     * @param frequencyMap                    the frequencyMap to save
-     * @param saveLocation                    the location to save it to
-     */
-    private static void saveFrequencyMap(Map<String, Integer> frequencyMap, String saveLocation) throws IOException {
-        List<FrequencyContainer> freqList = new ArrayList<>();
-        for (Map.Entry<String, Integer> entry : frequencyMap.entrySet()) {
-            freqList.add(new FrequencyContainer(entry.getValue(), entry.getKey()));
-        }
-
-        freqList.sort((container1, container2) -> Integer.compare(container2.frequency, container1.frequency));
-
-        BufferedWriter writer = new BufferedWriter(new FileWriter(saveLocation));
-
-        for (FrequencyContainer container : freqList) {
-            writer.write(container.word + ":" + container.frequency + "\n");
-        }
-
-        writer.close();
+        scrapeUrbanDictionary(startingUrl, numberWordsToCollect, saveLocation, PageFetcher.jsoup());
     }
 
     /**
-     * Adds the word to the frequency map if it is compatible
+     * Scrapes Urban Dictionary through the given fetcher. The crawl is checkpointed next to saveLocation, and an
+     * interrupted crawl resumes from there.
      *
-     * @param word                           the word to add
-     * @param frequencyMap                   the map to add it to
+     * @param startingUrl                           the URL to begin from
+     * @param numberWordsToCollect                  the number of unique words we want to collect
+     * @param saveLocation                          where to save the word:count lines
+     * @param fetcher                               where the pages come from
      */
-    private static void addWordIfCompatible(String word, Map<String, Integer> frequencyMap) {
-        // modify the word to trim out punctuation, etc
-        word = word.toLowerCase().replaceAll("[.,\"!?\n()*]", "");
-        // abort if we fail matches
-        if (!word.matches("[a-z]+")) {
-            return;
-        }
-
-        if (!frequencyMap.containsKey(word)) {
-            frequencyMap.put(word, 0);
+    public static void scrapeUrbanDictionary(
+            String startingUrl,
+            Integer numberWordsToCollect,
+            String saveLocation,
+            PageFetcher fetcher
+    ) {
+        CrawlEngine engine = new CrawlEngine(fetcher, UrbanDictionaryScraper::parsePage, CONCURRENCY, PER_HOST_CONCURRENCY);
+        try {
+            engine.checkpointTo(Paths.get(saveLocation + ".checkpoint"), CHECKPOINT_INTERVAL);
+            engine.offer(startingUrl);
+            engine.crawl(numberWordsToCollect);
+            engine.save(Paths.get(saveLocation));
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        // increment up by 1
-        frequencyMap.put(word, frequencyMap.get(word)+1);
     }
 
     /**
-     * Parses the url; adds words to the frequencyMap, and updates the urlQueue
+     * Parses a fetched page; counts its words and queues the definitions it links to
      *
-     * @param url                           the url to retrieve
-     * @param frequencyMap                  the freq map to add to
-     * @param urlQueue                      the queue of the next URLs to visit
-     * @param travelledUrls                 the urls we've already visited
+     * @param url                           the url of the page
+     * @param doc                           the page
+     * @param engine                        the engine to queue links on and count words with
      */
-    public static void parsePage(
-            String url,
-            Map<String, Integer> frequencyMap,
-            Queue<String> urlQueue,
-            Set<String> travelledUrls
-    ) throws IOException {
-        Document doc = Jsoup.connect(url).get();
-
+    public static void parsePage(String url, Document doc, CrawlEngine engine) {
         Elements links = doc.select("a[href]");
         for (Element link : links) {
-            // makes sure it is not an external link, or has been visited previously
+            // makes sure it is not an external link; the engine skips ones visited previously
             String linkUrl = link.attr("abs:href");
-            if (linkUrl.contains("https://www.urbandictionary.com/define.php") && !travelledUrls.contains(linkUrl)) {
-                travelledUrls.add(linkUrl);
-                urlQueue.add(linkUrl);
+            if (linkUrl.contains("https://www.urbandictionary.com/define.php")) {
+                engine.offer(linkUrl);
             }
         }
 
         // meaning and examples are the classNames for the target divs in the page
         Elements meanings = doc.select(".meaning");
         Elements examples = doc.select(".example");
+        WordCounter pageWords = new WordCounter();
         for (Elements contents : new ArrayList<Elements>(){{ add(meanings); add(examples); }} ) {
             for (Element content : contents) {
-                // iterate over words, add if compatible
-                for (String word : content.text().split(" ")) {
-                    addWordIfCompatible(word, frequencyMap);
-                }
+                WordTokenizer.countWords(content.text(), pageWords);
             }
         }
+        engine.count(pageWords);
     }
 
+    /**
+     * With an argument, crawls through a CrawlStub at that base URL (e.g. http://127.0.0.1:8081) instead of the live
+     * site
+     */
     public static void main(String[] args) {
         scrapeUrbanDictionary(
                 "https://www.urbandictionary.com/",
                 50000,
-                "./urban-words.txt"
+                "./urban-words.txt",
+                args.length > 0 ? CrawlStub.fetcher(args[0]) : PageFetcher.jsoup()
         );
     }
 }
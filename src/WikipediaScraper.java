@@ -1,18 +1,19 @@
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.*;
+import java.nio.file.Paths;
 
 /**
  * This class scrapes Urban Dictionary to find a frequency table of words
  * the idea is that frequency on Urban Dictionary should somehow correlate with funniness.
  */
 public class WikipediaScraper {
+    private static final int CONCURRENCY = 64;
+    private static final int PER_HOST_CONCURRENCY = 8;
+    private static final long CHECKPOINT_INTERVAL = 500;
+
     /**
      * The master function to scrape Urban Dictionary
      *
@@ -20,96 +21,71 @@ public class WikipediaScraper {
      * @param numberWordsToCollect                  the number of unique words we want to collect
      */
     public static void scrapeWikipedia(String startingUrl, Integer numberWordsToCollect, String saveLocation) {
-        Map<String, Integer> frequencyMap = new HashMap<>();
-
-        // iterates through the queue, finding more links and words
-        while (frequencyMap.size() < numberWordsToCollect) {
-            try {
-                parsePage(startingUrl, frequencyMap);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-
-            System.out.println("Map Size: " + frequencyMap.size());
-        }
-
-        try {
-            saveFrequencyMap(frequencyMap, saveLocation);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        scrapeWikipedia(startingUrl, numberWordsToCollect, saveLocation, PageFetcher.jsoup());
     }
 
     /**
-     * Saves the frequency map to a file
+     * Scrapes Wikipedia through the given fetcher. The crawl is checkpointed next to saveLocation, and an interrupted
+     * crawl resumes from there.
      *
-     * @param frequencyMap                    the frequencyMap to save
-     * @param saveLocation                    the location to save it to
-     */
-    private static void saveFrequencyMap(Map<String, Integer> frequencyMap, String saveLocation) throws IOException {
-        List<FrequencyContainer> freqList = new ArrayList<>();
-        for (Map.Entry<String, Integer> entry : frequencyMap.entrySet()) {
-            freqList.add(new FrequencyContainer(entry.getValue(), entry.getKey()));
-        }
-
-        freqList.sort((container1, container2) -> Integer.compare(container2.frequency, container1.frequency));
-
-        BufferedWriter writer = new BufferedWriter(new FileWriter(saveLocation));
-
-        for (FrequencyContainer container : freqList) {
-            writer.write(container.word + ":" + container.frequency + "\n");
-        }
-
-        writer.close();
-    }
-
-    /**
-     * Adds the word to the frequency map if it is compatible
-     *
-     * @param word                           the word to add
-     * @param frequencyMap                   the map to add it to
+     * @param startingUrl                           the random page URL, fetched over and over
+     * @param numberWordsToCollect                  the number of unique words we want to collect
+     * @param saveLocation                          where to save the word:count lines
+     * @param fetcher                               where the pages come from
      */
-    private static void addWordIfCompatible(String word, Map<String, Integer> frequencyMap) {
-        // modify the word to trim out punctuation, etc
-        word = word.toLowerCase().replaceAll("[.,\"!?\n()*]", "");
-        // abort if we fail matches
-        if (!word.matches("[a-z]+")) {
-            return;
-        }
-
-        if (!frequencyMap.containsKey(word)) {
-            frequencyMap.put(word, 0);
+    public static void scrapeWikipedia(
+            String startingUrl,
+            Integer numberWordsToCollect,
+            String saveLocation,
+            PageFetcher fetcher
+    ) {
+        CrawlEngine engine = new CrawlEngine(fetcher, WikipediaScraper::parsePage, CONCURRENCY, PER_HOST_CONCURRENCY);
+        try {
+            engine.checkpointTo(Paths.get(saveLocation + ".checkpoint"), CHECKPOINT_INTERVAL);
+            // every page queues the random page again, so failed fetches are the only way the crawl runs dry; when it
+            // does, we just start it again
+            while (engine.distinctWords() < numberWordsToCollect) {
+                for (int i = 0; i < PER_HOST_CONCURRENCY; i++) {
+                    engine.revisit(startingUrl);
+                }
+                engine.crawl(numberWordsToCollect);
+            }
+            engine.save(Paths.get(saveLocation));
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        // increment up by 1
-        frequencyMap.put(word, frequencyMap.get(word)+1);
     }
 
     /**
-     * Parses the url; adds words to the frequencyMap, and updates the urlQueue
+     * Parses a fetched page; counts its words and queues the random page again
      *
-     * @param url                           the url to retrieve
-     * @param frequencyMap                  the freq map to add to
+     * @param url                           the url of the page
+     * @param doc                           the page
+     * @param engine                        the engine to count words with
      */
-    public static void parsePage(
-            String url,
-            Map<String, Integer> frequencyMap
-    ) throws IOException {
-        Document doc = Jsoup.connect(url).get();
+    public static void parsePage(String url, Document doc, CrawlEngine engine) {
         // meaning and examples are the classNames for the target divs in the page
         Elements contents = doc.select("p");
+        WordCounter pageWords = new WordCounter();
         for (Element content : contents) {
-            // iterate over words, add if compatible
-            for (String word : content.text().split(" ")) {
-                addWordIfCompatible(word, frequencyMap);
-            }
+            WordTokenizer.countWords(content.text(), pageWords);
         }
+        engine.count(pageWords);
+        engine.revisit(url);
     }
 
+    /**
+     * With an argument, crawls through a CrawlStub at that base URL (e.g. http://127.0.0.1:8081) instead of the live
+     * site
+     */
     public static void main(String[] args) {
         scrapeWikipedia(
                 "https://en.wikipedia.org/wiki/Special:Random",
                 50000,
-                "./wikipedia-words.txt"
+                "./wikipedia-words.txt",
+                args.length > 0 ? CrawlStub.fetcher(args[0]) : PageFetcher.jsoup()
         );
     }
 }
@@ -0,0 +1,142 @@
+import java.util.Arrays;
+
+/**
+ * Counts words in an open-addressing table of words and primitive long counts. Tokens are looked up straight from the
+ * text they are in (see WordTokenizer), so counting a word we already have allocates nothing. Not thread-safe: each
+ * page gets its own, which is then merged into the crawl's counts once.
+ */
+public class WordCounter {
+    /**
+     * Receives each word and its count
+     */
+    public interface Visitor {
+        void visit(String word, long count);
+    }
+
+    private String[] words;
+    private int[] hashes;
+    private long[] counts;
+    private int size = 0;
+
+    public WordCounter() {
+        this(64);
+    }
+
+    /**
+     * @param expectedWords            roughly how many distinct words to expect
+     */
+    public WordCounter(int expectedWords) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedWords * 2 - 1)) << 1;
+        this.words = new String[capacity];
+        this.hashes = new int[capacity];
+        this.counts = new long[capacity];
+    }
+
+    /**
+     * Counts one occurrence of the word a token stands for
+     *
+     * @param text                     the text the token is in
+     * @param start                    the start of the token
+     * @param end                      the end of the token, exclusive
+     * @param hash                     the String hash of the word
+     * @param length                   the length of the word
+     */
+    void add(CharSequence text, int start, int end, int hash, int length) {
+        int mask = words.length - 1;
+        int slot = spread(hash) & mask;
+        for (String word; (word = words[slot]) != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && word.length() == length && WordTokenizer.spells(text, start, end, word)) {
+                counts[slot]++;
+                return;
+            }
+        }
+        insert(slot, WordTokenizer.wordOf(text, start, end, length), hash, 1);
+    }
+
+    /**
+     * Adds to the count of a word
+     *
+     * @param word                     the word
+     * @param count                    how much to add
+     */
+    public void add(String word, long count) {
+        int hash = word.hashCode();
+        int mask = words.length - 1;
+        int slot = spread(hash) & mask;
+        for (String existing; (existing = words[slot]) != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && existing.equals(word)) {
+                counts[slot] += count;
+                return;
+            }
+        }
+        insert(slot, word, hash, count);
+    }
+
+    public long get(String word) {
+        int hash = word.hashCode();
+        int mask = words.length - 1;
+        for (int slot = spread(hash) & mask; words[slot] != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && words[slot].equals(word)) {
+                return counts[slot];
+            }
+        }
+        return 0;
+    }
+
+    private void insert(int slot, String word, int hash, long count) {
+        words[slot] = word;
+        hashes[slot] = hash;
+        counts[slot] = count;
+        // keep the table at most half full so probes stay short
+        if (++size * 2 > words.length) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        String[] oldWords = words;
+        int[] oldHashes = hashes;
+        long[] oldCounts = counts;
+        words = new String[oldWords.length * 2];
+        hashes = new int[oldWords.length * 2];
+        counts = new long[oldWords.length * 2];
+
+        int mask = words.length - 1;
+        for (int i = 0; i < oldWords.length; i++) {
+            if (oldWords[i] != null) {
+                int slot = spread(oldHashes[i]) & mask;
+                while (words[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                words[slot] = oldWords[i];
+                hashes[slot] = oldHashes[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    // String hashes of short words differ mostly in their low bits, which is all the mask keeps
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    public void forEach(Visitor visitor) {
+        for (int i = 0; i < words.length; i++) {
+            if (words[i] != null) {
+                visitor.visit(words[i], counts[i]);
+            }
+        }
+    }
+
+    /**
+     * @return                         the number of distinct words
+     */
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(words, null);
+        size = 0;
+    }
+}
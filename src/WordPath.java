@@ -0,0 +1,103 @@
+import java.util.Arrays;
+
+/**
+ * The words of the partial anagram the search is on, as a reusable stack of word ids. The search pushes a word before
+ * recursing and pops it after, so one WordPath serves a whole search without copying a list at every node. The words
+ * are pushed through to a Scorer as well, so the score of the path is kept up to date as it changes.
+ *
+ * A path can also limit the anagrams it grows into to a range of word counts, which is how the anytime search
+ * deepens one word count at a time.
+ */
+public class WordPath {
+    private int[] ids;
+    private int length = 0;
+    private final Scorer scorer;
+    private final int minWords;
+    private final int maxWords;
+
+    /**
+     * @param scorer                   the scorer to keep up to date; it should have no words pushed
+     */
+    public WordPath(Scorer scorer) {
+        this(scorer, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param scorer                   the scorer to keep up to date; it should have no words pushed
+     * @param minWords                 the fewest words an anagram from this path may have
+     * @param maxWords                 the most words an anagram from this path may have
+     */
+    public WordPath(Scorer scorer, int minWords, int maxWords) {
+        this(new int[8], 0, scorer, minWords, maxWords);
+    }
+
+    private WordPath(int[] ids, int length, Scorer scorer, int minWords, int maxWords) {
+        this.ids = ids;
+        this.length = length;
+        this.scorer = scorer;
+        this.minWords = minWords;
+        this.maxWords = maxWords;
+    }
+
+    public void push(FrequencyContainer container) {
+        if (length == ids.length) {
+            ids = Arrays.copyOf(ids, length * 2);
+        }
+        ids[length++] = container.id;
+        scorer.push(container);
+    }
+
+    /**
+     * Removes the last word; the caller passes it back in so the scorer can pop it without a lookup
+     *
+     * @param container                the word that was pushed last
+     */
+    public void pop(FrequencyContainer container) {
+        length--;
+        scorer.pop(container);
+    }
+
+    /**
+     * @return                         the ids of the words, valid up to length(); the array is reused as we go
+     */
+    public int[] ids() {
+        return ids;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public Scorer scorer() {
+        return scorer;
+    }
+
+    /**
+     * @return                         true if the words so far are enough for a complete anagram
+     */
+    public boolean canEnd() {
+        return length >= minWords;
+    }
+
+    /**
+     * @return                         true if the next word has to be the last one
+     */
+    public boolean atLastWord() {
+        return length + 1 == maxWords;
+    }
+
+    /**
+     * @return                         true if another word may follow the words so far
+     */
+    public boolean canExtend() {
+        return length < maxWords;
+    }
+
+    /**
+     * Makes a copy that can be handed to another thread
+     * @return                         the copied WordPath
+     */
+    public WordPath copy() {
+        return new WordPath(ids.clone(), length, scorer.copy(), minWords, maxWords);
+    }
+}
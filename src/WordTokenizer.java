@@ -0,0 +1,108 @@
+/**
+ * Splits page text into words in a single pass, with the same rules the scrapers always used: tokens are separated by
+ * spaces, lowercased, stripped of . , " ! ? ( ) * and newlines, and kept only if what is left is one or more of a-z.
+ *
+ * Nothing is allocated per token. The lowercased word is never built: its hash and length are worked out during the
+ * scan, and the counter compares it against the words it has by rescanning the token. Only a word the counter has
+ * never seen becomes a String.
+ */
+public final class WordTokenizer {
+    // what letterOf returns for characters that are dropped, and for characters that reject the whole token
+    static final char SKIP = 0;
+    static final char REJECT = 1;
+
+    private WordTokenizer() {
+    }
+
+    /**
+     * Counts the words of a text
+     *
+     * @param text                     the text, e.g. Element.text()
+     * @param counter                  the counter to count the words in
+     */
+    public static void countWords(CharSequence text, WordCounter counter) {
+        int end = text.length();
+        int start = 0;
+        while (start <= end) {
+            int hash = 0;
+            int length = 0;
+            boolean rejected = false;
+            int position = start;
+            for (; position < end; position++) {
+                char character = text.charAt(position);
+                if (character == ' ') {
+                    break;
+                }
+                if (rejected) {
+                    continue;
+                }
+                char letter = letterOf(character);
+                if (letter == REJECT) {
+                    rejected = true;
+                }
+                else if (letter != SKIP) {
+                    // the same hash String.hashCode would give the finished word
+                    hash = 31 * hash + letter;
+                    length++;
+                }
+            }
+
+            if (!rejected && length > 0) {
+                counter.add(text, start, position, hash, length);
+            }
+            start = position + 1;
+        }
+    }
+
+    /**
+     * @param character                a character of a token
+     * @return                         the lowercase letter it stands for, SKIP if it is dropped or REJECT if the token
+     *                                 cannot be a word
+     */
+    static char letterOf(char character) {
+        if (character >= 'a' && character <= 'z') {
+            return character;
+        }
+        if (character >= 'A' && character <= 'Z') {
+            return (char) (character + ('a' - 'A'));
+        }
+        switch (character) {
+            case '.': case ',': case '"': case '!': case '?': case '\n': case '(': case ')': case '*':
+                return SKIP;
+            default:
+                break;
+        }
+        // the Kelvin sign is the one non-ASCII character String.toLowerCase turns into a-z (the dotted capital I
+        // becomes an i plus a combining dot, which the old regex rejected)
+        return character == '\u212A' ? 'k' : REJECT;
+    }
+
+    /**
+     * Builds the word a token stands for; only called for words that are new to a counter
+     */
+    static String wordOf(CharSequence text, int start, int end, int length) {
+        char[] word = new char[length];
+        int next = 0;
+        for (int i = start; i < end; i++) {
+            char letter = letterOf(text.charAt(i));
+            if (letter != SKIP) {
+                word[next++] = letter;
+            }
+        }
+        return new String(word);
+    }
+
+    /**
+     * @return                         true if the token spells out word
+     */
+    static boolean spells(CharSequence text, int start, int end, String word) {
+        int next = 0;
+        for (int i = start; i < end; i++) {
+            char letter = letterOf(text.charAt(i));
+            if (letter != SKIP && word.charAt(next++) != letter) {
+                return false;
+            }
+        }
+        return true;
+    }
+}